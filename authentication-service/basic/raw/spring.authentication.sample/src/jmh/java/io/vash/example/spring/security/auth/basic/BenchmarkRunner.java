@@ -0,0 +1,58 @@
+package io.vash.example.spring.security.auth.basic;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.Banner;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+
+/**
+ * Runs every benchmark of the hot path once per thread count, with the GC profiler, and writes
+ * one JSON result file per thread count into the results directory.
+ *
+ * <pre>
+ *     {@code
+ *     > mvn -P jmh compile exec:exec                # results in target/jmh
+ *     > ./gradlew jmh                               # results in build/jmh
+ *     > mvn -P jmh compile exec:exec -Djmh.threads=1,16 -Djmh.include=Vault
+ *     }
+ * </pre>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        final File results = new File(args.length > 0 ? args[0] : "target/jmh");
+        if (!results.isDirectory() && !results.mkdirs()) {
+            throw new IllegalStateException("Can not create " + results);
+        }
+        for (String threads : System.getProperty("jmh.threads", "1,4,8").split(",")) {
+            final Options options = new OptionsBuilder()
+                    .include(BenchmarkRunner.class.getPackage().getName() + ".*" + System.getProperty("jmh.include", ""))
+                    .threads(Integer.parseInt(threads.trim()))
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(results, "result-t" + threads.trim() + ".json").getPath())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    /**
+     * Application context on an embedded HSQLDB, without web server, quiet enough to benchmark.
+     */
+    static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(Application.class)
+                .web(false)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .properties("logging.level.root=WARN")
+                .properties(properties)
+                .run();
+    }
+}
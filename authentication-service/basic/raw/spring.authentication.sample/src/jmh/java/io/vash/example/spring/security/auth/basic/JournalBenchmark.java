@@ -0,0 +1,70 @@
+package io.vash.example.spring.security.auth.basic;
+
+import io.vash.example.spring.security.auth.basic.service.AuthenticationInfo;
+import io.vash.example.spring.security.auth.basic.service.AuthenticationJournal;
+import io.vash.example.spring.security.auth.basic.service.AuthenticationJournal.AuthenticationLogEntry;
+import io.vavr.collection.List;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code SuccessAuthenticationJournalWriter} (sync and async) and {@code SuccessAuthenticationJournalReader}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JournalBenchmark {
+
+    @Param({"sync", "async"})
+    String mode;
+
+    @Param({"5", "50"})
+    int limit;
+
+    private ConfigurableApplicationContext context;
+    private AuthenticationJournal journal;
+    private AuthenticationInfo info;
+    private final Principal principal = () -> "bench";
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkRunner.start("journal.mode=" + mode);
+        journal = context.getBean(AuthenticationJournal.class);
+        info = context.getBean(AuthenticationInfo.class);
+        for (int i = 0; i < 1000; i++) {
+            journal.success(principal);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public AuthenticationLogEntry success() {
+        return journal.success(principal);
+    }
+
+    @Benchmark
+    public List<AuthenticationLogEntry> successfulAttempts() {
+        return info.successfulAttempts(principal, limit);
+    }
+}
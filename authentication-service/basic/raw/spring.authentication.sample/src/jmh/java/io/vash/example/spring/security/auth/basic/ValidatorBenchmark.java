@@ -0,0 +1,36 @@
+package io.vash.example.spring.security.auth.basic;
+
+import io.vash.example.spring.security.auth.basic.RegistrationApi.ValidRegistrationRequest;
+import io.vavr.control.Validation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code ValidRegistrationRequest.Validator.validate} for a valid login and each rejection branch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidatorBenchmark {
+
+    @Param({"bob", " ", "toolong", "a b"})
+    String login;
+
+    @Benchmark
+    public Validation<IllegalArgumentException, ValidRegistrationRequest> validate() {
+        return ValidRegistrationRequest.Validator.DEFAULT.validate(login);
+    }
+}
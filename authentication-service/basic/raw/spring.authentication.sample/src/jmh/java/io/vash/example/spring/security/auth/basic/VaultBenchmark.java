@@ -0,0 +1,65 @@
+package io.vash.example.spring.security.auth.basic;
+
+import io.vash.example.spring.security.auth.basic.service.AuthenticationVault;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code JpaBasicAuthenticationVault} and {@code ConcurrentAuthenticationVault}, as wired by the application.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VaultBenchmark {
+
+    @Param({"jpa", "memory"})
+    String store;
+
+    private ConfigurableApplicationContext context;
+    private AuthenticationVault vault;
+    private Authentication registered;
+    private final AtomicLong logins = new AtomicLong();
+
+    @Setup
+    public void setUp() {
+        context = BenchmarkRunner.start("vault.store=" + store);
+        vault = context.getBean(AuthenticationVault.class);
+        final Authentication credentials = vault.register(() -> "bench");
+        registered = new UsernamePasswordAuthenticationToken(credentials.getPrincipal(), credentials.getCredentials());
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Authentication match() {
+        return vault.match(registered);
+    }
+
+    @Benchmark
+    public Authentication register() {
+        final String login = "r" + logins.incrementAndGet();
+        return vault.register(() -> login);
+    }
+}
@@ -1,22 +1,36 @@
 package io.vash.example.spring.security.auth.basic;
 
 
+import io.vash.example.spring.security.auth.basic.SessionTokens.BearerAuthentication;
+import io.vash.example.spring.security.auth.basic.SessionTokens.SessionToken;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.security.Principal;
+
 @Slf4j
 @RestController
 class AuthenticationApi {
 
     static final String ENDPOINT_AUTH = "/auth";
 
+    private final SessionTokens tokens;
+
+    @Autowired
+    AuthenticationApi(SessionTokens tokens) {
+        this.tokens = tokens;
+    }
+
     @RequestMapping(ENDPOINT_AUTH)
-    @ResponseStatus(HttpStatus.OK)
-    void authenticate() {
-        //magic
+    ResponseEntity<SessionToken> authenticate(Principal user) {
+        //magic, unless stateless sessions are enabled
+        if (!tokens.enabled()) return ResponseEntity.ok().build();
+        //Only credentials earn a token, otherwise a token could be renewed forever
+        return user instanceof BearerAuthentication ? ResponseEntity.status(HttpStatus.FORBIDDEN).build() : ResponseEntity.ok(tokens.issue(user.getName()));
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,148 @@
+package io.vash.example.spring.security.auth.basic;
+
+import io.vash.example.spring.security.auth.basic.service.Hashes;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throttles authentication per login and per source address once too many attempts failed, before any credential
+ * is compared. Enabled with {@code auth.throttle.enabled=true}.
+ *
+ * Failures fill a leaky bucket that loses half its content every {@code auth.throttle.window} ms; attempts are
+ * rejected while the bucket holds {@code auth.throttle.login.limit} (per login, from any address) or
+ * {@code auth.throttle.address.limit} (per address) failures. The login bucket is what stops guessing a password
+ * from many addresses; the address bucket stops one address spraying many logins. Buckets live in a count-min sketch of fixed size, so memory does not depend on how many distinct
+ * logins or addresses an attack uses: a collision can only overestimate, never hide failures. Conservative updates
+ * keep those overestimates low: a flood of distinct keys only starts to throttle clean logins past about
+ * {@code 10 * auth.throttle.width} failures per window.
+ */
+@Component
+class FailureThrottle implements PublicMetrics {
+
+    private final boolean enabled;
+    private final long window;
+    private final int loginLimit;
+    private final int addressLimit;
+
+    private final Sketch logins;
+    private final Sketch addresses;
+
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    FailureThrottle(@Value("${auth.throttle.enabled:false}") boolean enabled,
+                    @Value("${auth.throttle.window:60000}") long window,
+                    @Value("${auth.throttle.login.limit:10}") int loginLimit,
+                    @Value("${auth.throttle.address.limit:100}") int addressLimit,
+                    @Value("${auth.throttle.width:65536}") int width) {
+        this.enabled = enabled;
+        this.window = window;
+        this.loginLimit = loginLimit;
+        this.addressLimit = addressLimit;
+        this.logins = new Sketch(width);
+        this.addresses = new Sketch(width);
+    }
+
+    boolean permits(final Authentication authentication) {
+        if (!enabled) return true;
+        final long now = now();
+        final String address = address(authentication);
+        if (logins.estimate(authentication.getName(), now) >= loginLimit
+                || (address != null && addresses.estimate(address, now) >= addressLimit)) {
+            rejected.increment();
+            return false;
+        }
+        return true;
+    }
+
+    void failure(final Authentication authentication) {
+        if (!enabled) return;
+        final long now = now();
+        final String address = address(authentication);
+        logins.add(authentication.getName(), now);
+        if (address != null) addresses.add(address, now);
+        failures.increment();
+    }
+
+    private long now() {
+        return System.currentTimeMillis() / window & Sketch.COUNT;
+    }
+
+    private static String address(final Authentication authentication) {
+        final Object details = authentication.getDetails();
+        return details instanceof WebAuthenticationDetails ? ((WebAuthenticationDetails) details).getRemoteAddress() : null;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("auth.throttle.failures", failures.sum()),
+                new Metric<>("auth.throttle.rejected", rejected.sum()));
+    }
+
+    /**
+     * Count-min sketch of two rows, each cell packs the window it was last updated in (high half) and its count
+     * (low half), and decays on read. Adds are conservative: only the cells at the estimate grow, the others already
+     * count more than that key. Keys are hashed with a random seed so nobody can aim collisions at a login.
+     */
+    static final class Sketch {
+
+        private static final long COUNT = 0xFFFFFFFFL;
+
+        private final AtomicLongArray cells;
+        private final int mask;
+        private final long seed = new SecureRandom().nextLong();
+
+        Sketch(int width) {
+            final int size = Integer.highestOneBit(Math.max(2, width - 1) << 1);
+            this.cells = new AtomicLongArray(2 * size);
+            this.mask = size - 1;
+        }
+
+        long estimate(final String key, final long now) {
+            final long hash = hash(key);
+            return Math.min(decayed(cells.get(first(hash)), now), decayed(cells.get(second(hash)), now));
+        }
+
+        void add(final String key, final long now) {
+            final long hash = hash(key);
+            final long count = Math.min(COUNT, estimate(key, now) + 1);
+            raise(first(hash), count, now);
+            raise(second(hash), count, now);
+        }
+
+        private void raise(final int index, final long count, final long now) {
+            long cell;
+            do {
+                cell = cells.get(index);
+            } while (decayed(cell, now) < count && !cells.compareAndSet(index, cell, (now << 32) | count));
+        }
+
+        private int first(final long hash) {
+            return (int) hash & mask;
+        }
+
+        private int second(final long hash) {
+            return mask + 1 + ((int) (hash >>> 32) & mask);
+        }
+
+        private static long decayed(final long cell, final long now) {
+            final long age = now - (cell >>> 32);
+            return age <= 0 ? cell & COUNT : age >= 32 ? 0 : (cell & COUNT) >>> age;
+        }
+
+        private long hash(final String key) {
+            return Hashes.hash(key, seed);
+        }
+    }
+}
@@ -1,16 +1,23 @@
 package io.vash.example.spring.security.auth.basic;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.vash.example.spring.security.auth.basic.service.AuthenticationInfo;
 import io.vash.example.spring.security.auth.basic.service.AuthenticationJournal.AuthenticationLogEntry;
 import io.vavr.collection.List;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.security.Principal;
 
 @Slf4j
@@ -18,10 +25,12 @@ import java.security.Principal;
  class JournalApi {
 
     private final AuthenticationInfo info;
+    private final ObjectMapper mapper;
 
     @Autowired
-    JournalApi(AuthenticationInfo info) {
+    JournalApi(AuthenticationInfo info, ObjectMapper mapper) {
         this.info = info;
+        this.mapper = mapper;
     }
 
     @RequestMapping("/journal/auth/successful")
@@ -34,6 +43,50 @@ import java.security.Principal;
                 .toList());
     }
 
+    /**
+     * Walks the whole journal of the user page by page: {@code next} holds the {@code before} and {@code seq}
+     * cursor of the following page, absent on the last one. The journal id breaks ties between attempts of the
+     * same millisecond, so a page boundary never skips or repeats one. Entries are written to the client as they are read.
+     */
+    @RequestMapping("/journal/auth/successful/history")
+    ResponseEntity<StreamingResponseBody> successfulAuthenticationHistory(
+            @AuthenticationPrincipal Principal user,
+            @RequestParam(value="before", defaultValue="" + Long.MAX_VALUE) long before,
+            @RequestParam(value="seq", defaultValue="" + Long.MAX_VALUE) long seq,
+            @RequestParam(value="limit", defaultValue="100") int limit){
+
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        final StreamingResponseBody body = out -> {
+            try (JsonGenerator json = mapper.getFactory().createGenerator(out)) {
+                final long[] last = {0, 0};
+                final int[] count = {0};
+                json.writeStartObject();
+                json.writeArrayFieldStart("timestamps");
+                info.successfulAttempts(user, before, seq, limit, (utc, id) -> {
+                    try {
+                        json.writeNumber(utc);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    last[0] = utc;
+                    last[1] = id;
+                    count[0]++;
+                });
+                json.writeEndArray();
+                if (count[0] == limit) {
+                    json.writeObjectFieldStart("next");
+                    json.writeNumberField("before", last[0]);
+                    json.writeNumberField("seq", last[1]);
+                    json.writeEndObject();
+                }
+                json.writeEndObject();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+    }
+
     @Value(staticConstructor = "of")
     private static class SuccessfulAuthenticationAttemptsResponse {
         List<Long> timestamps;
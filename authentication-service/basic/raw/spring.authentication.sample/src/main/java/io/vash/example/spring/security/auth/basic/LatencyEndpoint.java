@@ -0,0 +1,104 @@
+package io.vash.example.spring.security.auth.basic;
+
+import io.vash.example.spring.security.auth.basic.service.Latencies;
+import io.vash.example.spring.security.auth.basic.service.Latencies.Histogram;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptorAdapter;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static io.vash.example.spring.security.auth.basic.AuthenticationApi.ENDPOINT_AUTH;
+import static io.vash.example.spring.security.auth.basic.RegistrationApi.ENDPOINT_REGISTER;
+
+/**
+ * Count, mean, p50, p99, p999 and max in µs of every {@link Latencies} histogram, at {@code /latency}:
+ *
+ * <pre>
+ *     {@code
+ *     > auth_service "$AUTH_ENDPOINT/latency" $AUTH_USER_BASIC
+ *     {"endpoint:/auth":{"count":3,"mean":2180,"p50":1279,"p99":4991,"p999":4991,"max":4962}, ...}
+ *     }
+ * </pre>
+ */
+@Component
+class LatencyEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+    private final Latencies latencies;
+
+    @Autowired
+    LatencyEndpoint(Latencies latencies) {
+        super("latency");
+        this.latencies = latencies;
+    }
+
+    @Override
+    public Map<String, Object> invoke() {
+        return latencies.summary();
+    }
+
+    /**
+     * Times whole requests to the API, authentication included, until the response is complete: streamed
+     * responses are only done when their asynchronous processing is. The completion is registered with the
+     * request's async manager before the handler runs, so it is hooked in when the async processing starts.
+     */
+    @Component
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    static class EndpointLatencyFilter extends OncePerRequestFilter {
+
+        private final Map<String, Histogram> endpoints = new HashMap<>();
+
+        @Autowired
+        EndpointLatencyFilter(Latencies latencies) {
+            for (String endpoint : new String[]{ENDPOINT_AUTH, ENDPOINT_REGISTER, ENDPOINT_REGISTER + "/batch",
+                    "/journal/auth/successful", "/journal/auth/successful/history"}) {
+                endpoints.put(endpoint, latencies.histogram("endpoint:" + endpoint));
+            }
+        }
+
+        @Override
+        protected boolean shouldNotFilter(HttpServletRequest request) {
+            return !endpoints.containsKey(request.getRequestURI());
+        }
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+            final long started = System.nanoTime();
+            final Histogram histogram = endpoints.get(request.getRequestURI());
+            WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(Completion.class, new Completion(histogram, started));
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                if (!request.isAsyncStarted()) histogram.since(started);
+            }
+        }
+    }
+
+    private static final class Completion extends CallableProcessingInterceptorAdapter {
+        private final Histogram histogram;
+        private final long started;
+
+        Completion(Histogram histogram, long started) {
+            this.histogram = histogram;
+            this.started = started;
+        }
+
+        @Override
+        public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+            histogram.since(started);
+        }
+    }
+}
@@ -1,8 +1,16 @@
 package io.vash.example.spring.security.auth.basic;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.vash.example.spring.security.auth.basic.service.AuthenticationVault;
 import io.vash.example.spring.security.auth.basic.service.AuthenticationVault.IdentifierConflict;
 import io.vash.example.spring.security.auth.basic.service.AuthenticationVault.IdentifierMismatch;
+import io.vash.example.spring.security.auth.basic.service.CredentialHasher.Overloaded;
+import io.vavr.Tuple2;
+import io.vavr.collection.Iterator;
+import io.vavr.collection.List;
 import io.vavr.control.Try;
 import io.vavr.control.Validation;
 import lombok.Data;
@@ -10,21 +18,29 @@ import lombok.NoArgsConstructor;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
+import java.io.IOException;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Objects;
 
 
@@ -35,10 +51,14 @@ class RegistrationApi {
     final static String ENDPOINT_REGISTER = "/register";
 
     private final Registrant registrant;
+    private final ObjectMapper mapper;
+    private final int chunk;
 
     @Autowired
-    RegistrationApi(Registrant registrant) {
+    RegistrationApi(Registrant registrant, ObjectMapper mapper, @org.springframework.beans.factory.annotation.Value("${register.batch.chunk:500}") int chunk) {
         this.registrant = registrant;
+        this.mapper = mapper;
+        this.chunk = chunk;
     }
 
     @RequestMapping("/register")
@@ -49,6 +69,79 @@ class RegistrationApi {
                  .get();
     }
 
+    /**
+     * Registers a JSON array of {@code {"login": ...}}, read {@code register.batch.chunk} logins at a time while the
+     * results of the previous chunks are already written back, one per login and in the same order:
+     * {@code {"login": ..., "token": ...}} or {@code {"login": ..., "status": 409, "error": ...}}.
+     * Only the logins of {@code auth.admins}, authenticated with their credentials, may provision in bulk.
+     *
+     * <pre>
+     *     {@code
+     *     > auth_service -X "POST" "$AUTH_ENDPOINT/register/batch" $AUTH_USER_BASIC -d '[{"login": "svc1"}, {"login": "svc2"}]'
+     *     }
+     * </pre>
+     */
+    @RequestMapping(value = "/register/batch", method = RequestMethod.POST)
+    ResponseEntity<StreamingResponseBody> registerBatch(HttpServletRequest request) throws IOException {
+        final JsonParser parser = mapper.getFactory().createParser(request.getInputStream());
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            parser.close();
+            throw new IllegalArgumentException("Expected an array of registrations");
+        }
+        final StreamingResponseBody body = out -> {
+            try (JsonParser input = parser; JsonGenerator json = mapper.getFactory().createGenerator(out)) {
+                json.writeStartArray();
+                final java.util.List<String> logins = new ArrayList<>(chunk);
+                try {
+                    while (input.nextToken() == JsonToken.START_OBJECT) {
+                        logins.add(mapper.readValue(input, RegistrationRequest.class).getLogin());
+                        if (logins.size() == chunk) {
+                            writeResults(json, logins);
+                        }
+                    }
+                    writeResults(json, logins);
+                    if (input.currentToken() != JsonToken.END_ARRAY) {
+                        throw new IOException("Expected a registration object");
+                    }
+                } catch (IOException e) { //Results of the logins before it are already out, answer what follows in band
+                    log.debug("Malformed registration batch", e);
+                    json.writeStartObject();
+                    json.writeNumberField("status", HttpStatus.BAD_REQUEST.value());
+                    json.writeStringField("error", e.getMessage());
+                    json.writeEndObject();
+                }
+                json.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+    }
+
+    private void writeResults(final JsonGenerator json, final java.util.List<String> logins) throws IOException {
+        final List<Try<ValidRegistrationRequest>> requests = List.ofAll(logins).map(ValidRegistrationRequest::tryFor);
+        final Iterator<Try<Authentication>> registered = this.registrant.registerAll(requests.filter(Try::isSuccess).map(Try::get)).iterator();
+        for (Tuple2<String, Try<ValidRegistrationRequest>> request : List.ofAll(logins).zip(requests)) {
+            final Try<Authentication> result = request._2.isSuccess() ? registered.next() : Try.failure(request._2.getCause());
+            json.writeStartObject();
+            json.writeStringField("login", request._1);
+            if (result.isSuccess()) {
+                json.writeStringField("token", result.get().getCredentials().toString());
+            } else {
+                json.writeNumberField("status", status(result.getCause()).value());
+                json.writeStringField("error", result.getCause().getLocalizedMessage());
+            }
+            json.writeEndObject();
+        }
+        json.flush();
+        logins.clear();
+    }
+
+    private static HttpStatus status(final Throwable failure) {
+        return failure instanceof IdentifierConflict ? HttpStatus.CONFLICT :
+                failure instanceof IllegalArgumentException ? HttpStatus.BAD_REQUEST :
+                failure instanceof Overloaded ? HttpStatus.SERVICE_UNAVAILABLE :
+                HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
     private Try<ValidRegistrationRequest> tryToValidate(RegistrationRequest request) {
         log.debug("Requested to register {}", request);
         return ValidRegistrationRequest.tryFor(request.getLogin());
@@ -83,6 +176,15 @@ class RegistrationApi {
             }
         }
 
+        List<Try<Authentication>> registerAll(final List<ValidRegistrationRequest> requests) {
+            if (requests.isEmpty()) return List.empty();
+            try {
+                return vault.registerAll(requests.toJavaList());
+            } catch (RuntimeException e) { //The whole chunk, say the database is gone
+                return requests.map(request -> Try.failure(e));
+            }
+        }
+
     }
 
     @Data
@@ -161,6 +263,14 @@ class RegistrationApi {
             return ApiError.error(HttpStatus.FORBIDDEN,e.getLocalizedMessage(),e.getMessage());
         }
 
+        @ExceptionHandler({Overloaded.class})
+        ResponseEntity<ApiError> handleOverload(Overloaded e) {
+            log.debug("Credential hashing overloaded");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, Long.toString(e.getRetryAfter()))
+                    .body(ApiError.error(HttpStatus.SERVICE_UNAVAILABLE, "Try again later", "Credential hashing overloaded"));
+        }
+
         @ExceptionHandler({IllegalArgumentException.class})
         @ResponseStatus(HttpStatus.BAD_REQUEST)
         @ResponseBody
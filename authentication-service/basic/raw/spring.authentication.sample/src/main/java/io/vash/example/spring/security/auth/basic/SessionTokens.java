@@ -0,0 +1,126 @@
+package io.vash.example.spring.security.auth.basic;
+
+import io.vavr.control.Option;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+
+/**
+ * Stateless session tokens, enabled with {@code auth.stateless.enabled=true}.
+ *
+ * A token is {@code base64url(login).expires.base64url(HMAC-SHA256(base64url(login).expires))}, so checking it
+ * takes one MAC and no vault lookup. All nodes must share {@code auth.stateless.secret} (base64), otherwise
+ * each node signs with its own random key and only accepts its own tokens.
+ */
+@Slf4j
+@Component
+class SessionTokens {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String BEARER = "Bearer ";
+
+    private final boolean enabled;
+    private final long ttl;
+    private final SecretKeySpec secret;
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    SessionTokens(@Value("${auth.stateless.enabled:false}") boolean enabled,
+                  @Value("${auth.stateless.ttl:3600000}") long ttl,
+                  @Value("${auth.stateless.secret:}") String secret) {
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.secret = new SecretKeySpec(secret.isEmpty() ? randomKey(enabled) : Base64.getDecoder().decode(secret), ALGORITHM);
+    }
+
+    boolean enabled() {
+        return enabled;
+    }
+
+    SessionToken issue(final String login) {
+        final long expires = System.currentTimeMillis() + ttl;
+        final String payload = Base64.getUrlEncoder().withoutPadding().encodeToString(login.getBytes(StandardCharsets.UTF_8)) + '.' + expires;
+        return new SessionToken(payload + '.' + Base64.getUrlEncoder().withoutPadding().encodeToString(sign(payload)), expires);
+    }
+
+    Option<String> verify(final String token) {
+        final int signature = token.lastIndexOf('.');
+        final int expiry = signature > 0 ? token.lastIndexOf('.', signature - 1) : -1;
+        if (expiry <= 0) return Option.none();
+        try {
+            final String payload = token.substring(0, signature);
+            final long expires = Long.parseLong(token.substring(expiry + 1, signature));
+            final byte[] provided = Base64.getUrlDecoder().decode(token.substring(signature + 1));
+            if (expires < System.currentTimeMillis() || !MessageDigest.isEqual(sign(payload), provided)) return Option.none();
+            return Option.of(new String(Base64.getUrlDecoder().decode(token.substring(0, expiry)), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) { //Malformed number or base64
+            return Option.none();
+        }
+    }
+
+    OncePerRequestFilter filter() {
+        return new OncePerRequestFilter() {
+            @Override
+            protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+                final String header = request.getHeader("Authorization");
+                if (header != null && header.startsWith(BEARER)) {
+                    verify(header.substring(BEARER.length())).forEach(login ->
+                            SecurityContextHolder.getContext().setAuthentication(new BearerAuthentication(login)));
+                }
+                chain.doFilter(request, response);
+            }
+        };
+    }
+
+    private byte[] sign(final String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(secret);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Can not initialize " + ALGORITHM, e);
+        }
+    }
+
+    private static byte[] randomKey(boolean enabled) {
+        if (enabled) log.warn("No auth.stateless.secret configured, session tokens are only valid on this node");
+        final byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+
+    @lombok.Value
+    static class SessionToken {
+        String token;
+        long expires;
+    }
+
+    /**
+     * A request authenticated by a session token rather than by credentials, it is not given a new token.
+     */
+    static final class BearerAuthentication extends UsernamePasswordAuthenticationToken {
+        BearerAuthentication(String login) {
+            super(login, null, Collections.emptyList());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import io.vash.example.spring.security.auth.basic.service.AuthenticationVault;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In memory vault, selected with {@code vault.store=memory}.
+ *
+ * Keeps a SHA-256 digest of each generated token in a {@link ConcurrentHashMap}: registration is a single
+ * atomic {@code putIfAbsent}, lookups never lock. Tokens are random UUIDs, so a plain digest is enough to
+ * avoid keeping them in memory.
+ */
+@Slf4j
+@Primary
+@Repository
+@ConditionalOnProperty(name = "vault.store", havingValue = "memory")
+class ConcurrentAuthenticationVault implements AuthenticationVault {
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    final ConcurrentMap<String, byte[]> vault = new ConcurrentHashMap<>();
+
+    @Override
+    public Authentication register(final Principal principal) throws SecurityException {
+        Objects.requireNonNull(principal, "principal can not be null");
+        final String key = Objects.requireNonNull(principal.getName());
+        final String token = UUID.randomUUID().toString();
+        if (vault.putIfAbsent(key, digest(token)) != null) {
+            log.debug("Registration conflict for key {}", key);
+            throw collision(principal);
+        }
+        return new UsernamePasswordAuthenticationToken(key, token);
+    }
+
+    @Override
+    public Authentication match(final Authentication authentication) throws SecurityException {
+        Objects.requireNonNull(authentication,"vault can not be null");
+        final String key = Objects.requireNonNull(authentication.getName());
+        final Object credentials = authentication.getCredentials();
+        final byte[] secret = vault.get(key);
+        if (secret != null && credentials instanceof String && MessageDigest.isEqual(secret, digest((String) credentials))) {
+            return new UsernamePasswordAuthenticationToken(key, credentials, Collections.emptyList());
+        }
+        throw mismatch(authentication);
+    }
+
+    static byte[] digest(final String token) {
+        return SHA256.get().digest(token.getBytes(StandardCharsets.UTF_8));
+    }
+}
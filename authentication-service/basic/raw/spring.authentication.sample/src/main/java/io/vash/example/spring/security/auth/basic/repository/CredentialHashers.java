@@ -0,0 +1,110 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import io.vash.example.spring.security.auth.basic.service.CredentialHasher;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+interface CredentialHashers {
+
+    /**
+     * Key stretching, for credentials a human may have chosen. Runs on the {@link HashingExecutor}.
+     */
+    @Component
+    class BCryptCredentialHasher implements CredentialHasher {
+
+        private final BCryptPasswordEncoder bcrypt;
+        private final HashingExecutor executor;
+
+        BCryptCredentialHasher(@Value("${vault.hash.bcrypt.strength:10}") int strength, HashingExecutor executor) {
+            this.bcrypt = new BCryptPasswordEncoder(strength);
+            this.executor = executor;
+        }
+
+        @Override
+        public String id() {
+            return "bcrypt";
+        }
+
+        @Override
+        public String hash(String credential) throws Overloaded {
+            return executor.call(() -> bcrypt.encode(credential));
+        }
+
+        @Override
+        public boolean verify(String credential, String hash) throws Overloaded {
+            return executor.verify(credential, hash, bcrypt::matches);
+        }
+    }
+
+    /**
+     * HMAC-SHA256 under a server side pepper ({@code vault.hash.pepper}, base64), for the random tokens the vault
+     * generates: with 122 random bits there is nothing to stretch, and a leaked table is useless without the pepper.
+     * All nodes must share the pepper, so the hasher only exists once one is configured; a random one, outside of
+     * the application, only lives as long as the process.
+     */
+    @Slf4j
+    @Component
+    @ConditionalOnExpression("'${vault.hash.pepper:}' != ''")
+    class HmacCredentialHasher implements CredentialHasher {
+
+        private static final String ALGORITHM = "HmacSHA256";
+
+        private final SecretKeySpec pepper;
+        private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+        HmacCredentialHasher(@Value("${vault.hash.pepper:}") String pepper) {
+            this.pepper = new SecretKeySpec(pepper.isEmpty() ? randomKey() : Base64.getDecoder().decode(pepper), ALGORITHM);
+        }
+
+        @Override
+        public String id() {
+            return "hmac";
+        }
+
+        @Override
+        public String hash(String credential) {
+            return Base64.getEncoder().encodeToString(mac(credential));
+        }
+
+        @Override
+        public boolean verify(String credential, String hash) {
+            try {
+                return MessageDigest.isEqual(mac(credential), Base64.getDecoder().decode(hash));
+            } catch (IllegalArgumentException e) { //Not base64
+                return false;
+            }
+        }
+
+        private byte[] mac(String credential) {
+            return macs.get().doFinal(credential.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private Mac newMac() {
+            try {
+                final Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(pepper);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Can not initialize " + ALGORITHM, e);
+            }
+        }
+
+        private static byte[] randomKey() {
+            log.warn("No vault.hash.pepper configured, hmac credentials will not verify after a restart");
+            final byte[] key = new byte[32];
+            new SecureRandom().nextBytes(key);
+            return key;
+        }
+    }
+}
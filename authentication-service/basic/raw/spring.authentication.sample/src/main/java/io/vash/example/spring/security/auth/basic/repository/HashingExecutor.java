@@ -0,0 +1,127 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import io.vash.example.spring.security.auth.basic.service.CredentialHasher.Overloaded;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+
+/**
+ * Runs slow, CPU bound hashing on its own threads, so a burst of logins can not occupy every request thread.
+ *
+ * The pool has one thread per core ({@code vault.hash.threads}) behind a queue of {@code vault.hash.queue} tasks,
+ * work that does not fit is rejected at once with {@link Overloaded}. Concurrent verifications of the same
+ * credential against the same hash share one computation.
+ */
+@Slf4j
+@Component
+class HashingExecutor implements PublicMetrics, DisposableBean {
+
+    private final ThreadPoolExecutor pool;
+    private final long retryAfter;
+    private final ConcurrentMap<String, CompletableFuture<Boolean>> verifying = new ConcurrentHashMap<>();
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    HashingExecutor(@Value("${vault.hash.threads:0}") int threads,
+                    @Value("${vault.hash.queue:64}") int queue,
+                    @Value("${vault.hash.retry-after:1}") long retryAfter) {
+        final int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        final AtomicInteger count = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queue), task -> {
+            final Thread thread = new Thread(task, "credential-hasher-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retryAfter = retryAfter;
+    }
+
+    <T> T call(final Callable<T> work) throws Overloaded {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        submit(work, result);
+        return await(result);
+    }
+
+    boolean verify(final String credential, final String hash, final BiPredicate<String, String> check) throws Overloaded {
+        final String key = hash + '\u0000' + credential;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        final CompletableFuture<Boolean> running = verifying.putIfAbsent(key, result);
+        if (running != null) {
+            coalesced.increment();
+            return await(running);
+        }
+        result.whenComplete((matches, e) -> verifying.remove(key, result));
+        submit(() -> check.test(credential, hash), result);
+        return await(result);
+    }
+
+    private <T> void submit(final Callable<T> work, final CompletableFuture<T> result) throws Overloaded {
+        final long queued = System.nanoTime();
+        try {
+            pool.execute(() -> {
+                try {
+                    result.complete(work.call());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    completed.increment();
+                    nanos.add(System.nanoTime() - queued);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            final Overloaded overloaded = new Overloaded(retryAfter);
+            result.completeExceptionally(overloaded);
+            throw overloaded;
+        }
+    }
+
+    private static <T> T await(final CompletableFuture<T> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdown();
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final long count = completed.sum();
+        return Arrays.asList(
+                new Metric<>("vault.hash.queue", pool.getQueue().size()),
+                new Metric<>("vault.hash.active", pool.getActiveCount()),
+                new Metric<>("vault.hash.rejected", rejected.sum()),
+                new Metric<>("vault.hash.coalesced", coalesced.sum()),
+                new Metric<>("vault.hash.completed", count),
+                new Metric<>("vault.hash.latency.mean", count == 0 ? 0.0 : nanos.sum() / 1000.0 / count)); //Microseconds, queueing included
+    }
+}
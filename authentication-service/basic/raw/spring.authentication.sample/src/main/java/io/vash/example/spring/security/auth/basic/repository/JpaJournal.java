@@ -1,71 +1,184 @@
 package io.vash.example.spring.security.auth.basic.repository;
 
 import io.vash.example.spring.security.auth.basic.repository.JpaJournal.JpaAuthenticationData;
+import io.vash.example.spring.security.auth.basic.service.Audit;
+import io.vash.example.spring.security.auth.basic.service.Audit.Event;
 import io.vash.example.spring.security.auth.basic.service.AuthenticationInfo;
 import io.vash.example.spring.security.auth.basic.service.AuthenticationJournal;
 import io.vash.example.spring.security.auth.basic.service.AuthenticationJournal.AuthenticationLogEntry;
 import io.vash.example.spring.security.auth.basic.service.AuthenticationJournal.AuthenticationState;
-import io.vavr.collection.Array;
+import io.vash.example.spring.security.auth.basic.service.Latencies;
+import io.vash.example.spring.security.auth.basic.service.Latencies.Histogram;
 import io.vavr.collection.List;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Persistable;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import javax.persistence.Entity;
-import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.Table;
+import javax.persistence.Transient;
 import java.security.Principal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 
 interface JpaJournal extends CrudRepository<JpaAuthenticationData,Long> {
 
-    java.util.List<JpaAuthenticationData> findByKeyOrderByUtcDesc(String key, Pageable pageable);
-
+    /**
+     * Journal rows carry a client generated, time ordered {@link TimeOrderedIds id}, so persisting them
+     * needs no identity round trip.
+     * Reads walk the (key, utc, seq) index backwards, so the newest entries of a key are found without a sort
+     * and entries of the same millisecond keep their id order.
+     */
     @Entity(name = "SuccessAuthLog")
+    @Table(indexes = @Index(name = "success_auth_log_key_utc", columnList = "key, utc, seq"))
     @AllArgsConstructor
     @NoArgsConstructor
-    class JpaAuthenticationData {
+    class JpaAuthenticationData implements Persistable<Long> {
 
         JpaAuthenticationData(AuthenticationLogEntry entry) {
+            this.seq = TimeOrderedIds.next();
             this.key = entry.getPrincipal().getName();
             this.utc = entry.getUtc();
         }
 
-        @Id  @GeneratedValue(strategy= GenerationType.IDENTITY)
+        @Id
         long seq;
         String key;
         long utc;
 
+        @Transient
+        boolean persisted;
+
+        @Override
+        public Long getId() {
+            return seq;
+        }
+
+        @Override
+        public boolean isNew() {
+            return !persisted; //Assigned ids would otherwise make save() merge, with a SELECT per row
+        }
+
+        @PostLoad
+        @PostPersist
+        void markPersisted() {
+            this.persisted = true;
+        }
+    }
+
+    /**
+     * Failed attempts, only written. They are kept apart from the successful ones so the reads above stay
+     * index only and never filter on a state.
+     */
+    @Entity(name = "FailedAuthLog")
+    @Table(indexes = @Index(name = "failed_auth_log_key_utc", columnList = "key, utc"))
+    @NoArgsConstructor
+    class JpaFailedAuthenticationData {
+        @Id
+        long seq;
+        String key;
+        long utc;
     }
 
     @Slf4j
     @Service
+    @ConditionalOnExpression("'${journal.mode:sync}' != 'mapped'")
     class SuccessAuthenticationJournalReader implements AuthenticationInfo {
 
-        private final JpaJournal journal;
+        //Ordering by the whole index prefix lets the database scan the index backwards instead of sorting
+        static final String RECENT = "select utc, seq from success_auth_log where key = ? order by key desc, utc desc, seq desc limit ?";
+        static final String BEFORE = "select utc, seq from success_auth_log where key = ? and (utc < ? or utc = ? and seq < ?)"
+                + " order by key desc, utc desc, seq desc limit ?";
+
+        private final JdbcTemplate jdbc;
+        private final RecentAuthentications recent;
+        private final Histogram readTime;
 
         @Autowired
-        public SuccessAuthenticationJournalReader(JpaJournal journal) {
-            this.journal = journal;
+        public SuccessAuthenticationJournalReader(JdbcTemplate jdbc, RecentAuthentications recent, Latencies latencies) {
+            this.jdbc = jdbc;
+            this.recent = recent;
+            this.readTime = latencies.histogram("journal.read");
         }
 
         @Override
         public List<AuthenticationLogEntry> successfulAttempts(final Principal principal, int limit) {
-            return Array.ofAll(load(principal,limit))
-                    .map( data -> data.utc)
-                    .map( utc -> new AuthenticationLogEntry(principal, AuthenticationState.SUCCESSFUL,utc))
-                    .toList();
+            final long started = System.nanoTime();
+            try {
+                return newest(principal, limit);
+            } finally {
+                readTime.since(started);
+            }
+        }
+
+        private List<AuthenticationLogEntry> newest(final Principal principal, int limit) {
+            if (limit > recent.capacity()) {
+                final Timestamps timestamps = load(principal,limit);
+                return entries(principal, timestamps.utc, timestamps.size);
+            }
+            final long[] cached = recent.newest(principal.getName(), limit);
+            if (cached != null) {
+                return entries(principal, cached, cached.length);
+            }
+            final long stamp = recent.stamp(principal.getName());
+            final Timestamps timestamps = load(principal, recent.capacity());
+            recent.warm(principal.getName(), stamp, timestamps.utc, timestamps.seq, timestamps.size);
+            return entries(principal, timestamps.utc, Math.min(limit, timestamps.size));
         }
 
-        private Iterable<JpaAuthenticationData> load(Principal principal,int limit) {
-            return journal.findByKeyOrderByUtcDesc(principal.getName(),new PageRequest(0,limit));
+        @Override
+        public void successfulAttempts(final Principal principal, long before, long seq, int limit, Visitor visitor) {
+            if (limit <= 0) return;
+            final long started = System.nanoTime();
+            try {
+                jdbc.query(BEFORE, (RowCallbackHandler) rs -> visitor.visit(rs.getLong(1), rs.getLong(2)),
+                        principal.getName(), before, before, seq, limit);
+            } finally {
+                readTime.since(started);
+            }
+        }
+
+        private List<AuthenticationLogEntry> entries(Principal principal, long[] utc, int size) {
+            List<AuthenticationLogEntry> entries = List.empty();
+            for (int i = size - 1; i >= 0; i--) {
+                entries = entries.prepend(map(principal, utc[i]));
+            }
+            return entries;
+        }
+
+        private Timestamps load(Principal principal,int limit) {
+            final Timestamps timestamps = new Timestamps(limit);
+            if (limit > 0) {
+                jdbc.query(RECENT, timestamps, principal.getName(), limit);
+            }
+            return timestamps;
         }
 
         private AuthenticationLogEntry map(Principal principal, long utc) {
@@ -73,17 +186,63 @@ interface JpaJournal extends CrudRepository<JpaAuthenticationData,Long> {
             return new AuthenticationLogEntry(principal,AuthenticationState.SUCCESSFUL,utc);
         }
 
+        /**
+         * Index only projection of the journal, read straight into a primitive array.
+         */
+        private static final class Timestamps implements RowCallbackHandler {
+            long[] utc;
+            long[] seq;
+            int size;
+
+            Timestamps(int limit) {
+                this.utc = new long[Math.max(0, Math.min(limit, 64))];
+                this.seq = new long[utc.length];
+            }
+
+            @Override
+            public void processRow(ResultSet rs) throws SQLException {
+                if (size == utc.length) {
+                    utc = Arrays.copyOf(utc, Math.max(1, size * 2));
+                    seq = Arrays.copyOf(seq, utc.length);
+                }
+                utc[size] = rs.getLong(1);
+                seq[size++] = rs.getLong(2);
+            }
+        }
     }
 
+    /**
+     * Successful attempts are saved on the request thread, they are read back right after. Failed attempts are
+     * only written: they are buffered and inserted in batches every {@code journal.failed.linger} ms, or by the
+     * request that finds the buffer full. A crash loses the buffered ones.
+     */
     @Slf4j
     @Service
-    class SuccessAuthenticationJournalWriter implements AuthenticationJournal {
+    @ConditionalOnProperty(name = "journal.mode", havingValue = "sync", matchIfMissing = true)
+    class SuccessAuthenticationJournalWriter implements AuthenticationJournal, DisposableBean {
+
+        static final String INSERT_FAILED = "insert into failed_auth_log (seq, key, utc) values (?, ?, ?)";
 
         private final JpaJournal journal;
+        private final JdbcTemplate jdbc;
+        private final RecentAuthentications recent;
+        private final Audit audit;
+        private final Histogram writeTime;
+        private final BlockingQueue<AuthenticationLogEntry> failures;
+        private final int batchSize;
 
         @Autowired
-        public SuccessAuthenticationJournalWriter(JpaJournal journal) {
+        public SuccessAuthenticationJournalWriter(JpaJournal journal, JdbcTemplate jdbc, RecentAuthentications recent, Audit audit,
+                                                  Latencies latencies,
+                                                  @Value("${journal.failed.capacity:8192}") int capacity,
+                                                  @Value("${journal.failed.batch-size:256}") int batchSize) {
             this.journal = journal;
+            this.jdbc = jdbc;
+            this.recent = recent;
+            this.audit = audit;
+            this.writeTime = latencies.histogram("journal.write");
+            this.failures = new ArrayBlockingQueue<>(capacity);
+            this.batchSize = batchSize;
         }
 
         private long timestamp() {
@@ -96,16 +255,273 @@ interface JpaJournal extends CrudRepository<JpaAuthenticationData,Long> {
             return logSuccess(new AuthenticationLogEntry(principal,AuthenticationState.SUCCESSFUL,timestamp()));
         }
 
+        @Override
+        public AuthenticationLogEntry failure(final Principal principal) {
+            Objects.requireNonNull(principal,"identifier can not be null");
+            return logFailure(new AuthenticationLogEntry(principal,AuthenticationState.FAILED,timestamp()));
+        }
+
         private AuthenticationLogEntry logSuccess(final AuthenticationLogEntry authenticationLogEntry) {
-            log.info("Authentication attempt success for: {}", authenticationLogEntry);
-            journal.save(new JpaAuthenticationData(authenticationLogEntry));
+            final long started = System.nanoTime();
+            final JpaAuthenticationData row = new JpaAuthenticationData(authenticationLogEntry);
+            journal.save(row);
+            writeTime.since(started);
+            recent.record(authenticationLogEntry.getPrincipal().getName(), authenticationLogEntry.getUtc(), row.seq);
+            audit.event(Event.JOURNALED, authenticationLogEntry.getPrincipal().getName());
             return authenticationLogEntry;
         }
 
         private AuthenticationLogEntry logFailure(final AuthenticationLogEntry authenticationLogEntry) {
-            log.info("Authentication attempt failed for: {}", authenticationLogEntry);
+            while (!failures.offer(authenticationLogEntry)) {
+                flushFailures();
+            }
             return authenticationLogEntry;
         }
 
+        @Scheduled(fixedDelayString = "${journal.failed.linger:50}")
+        synchronized void flushFailures() {
+            final java.util.List<AuthenticationLogEntry> batch = new ArrayList<>(Math.min(batchSize, failures.size()));
+            while (failures.drainTo(batch, batchSize) > 0) {
+                try {
+                    jdbc.batchUpdate(INSERT_FAILED, batch, batch.size(), (statement, entry) -> {
+                        statement.setLong(1, TimeOrderedIds.next());
+                        statement.setString(2, entry.getPrincipal().getName());
+                        statement.setLong(3, entry.getUtc());
+                    });
+                } catch (RuntimeException e) {
+                    log.error("Lost {} failed attempts", batch.size(), e);
+                }
+                batch.clear();
+            }
+        }
+
+        @Override
+        public void destroy() {
+            flushFailures();
+        }
+    }
+
+    /**
+     * Journal writer that keeps JPA off the request thread.
+     *
+     * Entries are put on a bounded queue and a single flusher thread persists them with JDBC batch
+     * inserts, whenever {@code batch-size} entries are pending or {@code linger} ms passed since the
+     * first pending one. Failed attempts share the queue and go to their own table in the same flush.
+     * A batch that fails is written again entry by entry under the same ids, so rows the batch did write
+     * are not duplicated; entries that still fail are logged and counted as lost.
+     * On shutdown the queue is drained before the data source goes away, entries that arrive after that
+     * are written synchronously.
+     */
+    @Slf4j
+    @Service
+    @ConditionalOnProperty(name = "journal.mode", havingValue = "async")
+    class AsyncSuccessAuthenticationJournalWriter implements AuthenticationJournal, PublicMetrics, DisposableBean {
+
+        static final String INSERT = "insert into success_auth_log (seq, key, utc) values (?, ?, ?)";
+        static final String INSERT_FAILED = "insert into failed_auth_log (seq, key, utc) values (?, ?, ?)";
+
+        public enum Backpressure {
+            BLOCK, DROP_OLDEST, SYNCHRONOUS
+        }
+
+        private final JdbcTemplate jdbc;
+        private final RecentAuthentications recent;
+        private final Audit audit;
+        private final BlockingQueue<AuthenticationLogEntry> pending;
+        private final Backpressure backpressure;
+        private final int batchSize;
+        private final long linger;
+        private final Thread flusher;
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder lost = new LongAdder();
+        private final Histogram writeTime;
+        private final Histogram flushTime;
+
+        private volatile boolean running = true;
+
+        @Autowired
+        AsyncSuccessAuthenticationJournalWriter(JdbcTemplate jdbc,
+                                                RecentAuthentications recent,
+                                                Audit audit,
+                                                Latencies latencies,
+                                                @Value("${journal.async.capacity:8192}") int capacity,
+                                                @Value("${journal.async.batch-size:256}") int batchSize,
+                                                @Value("${journal.async.linger:50}") long linger,
+                                                @Value("${journal.async.backpressure:BLOCK}") Backpressure backpressure) {
+            this.jdbc = jdbc;
+            this.recent = recent;
+            this.audit = audit;
+            this.pending = new ArrayBlockingQueue<>(capacity);
+            this.backpressure = backpressure;
+            this.batchSize = batchSize;
+            this.linger = linger;
+            this.writeTime = latencies.histogram("journal.write");
+            this.flushTime = latencies.histogram("journal.flush");
+            this.flusher = new Thread(this::flushLoop, "journal-flusher");
+            this.flusher.start();
+        }
+
+        @Override
+        public AuthenticationLogEntry success(final Principal principal) {
+            Objects.requireNonNull(principal,"identifier can not be null");
+            final long started = System.nanoTime();
+            final AuthenticationLogEntry entry = new AuthenticationLogEntry(principal,AuthenticationState.SUCCESSFUL,System.currentTimeMillis());
+            journal(entry);
+            writeTime.since(started);
+            audit.event(Event.JOURNALED, entry.getPrincipal().getName());
+            return entry;
+        }
+
+        @Override
+        public AuthenticationLogEntry failure(final Principal principal) {
+            Objects.requireNonNull(principal,"identifier can not be null");
+            final AuthenticationLogEntry entry = new AuthenticationLogEntry(principal,AuthenticationState.FAILED,System.currentTimeMillis());
+            journal(entry);
+            return entry;
+        }
+
+        private void journal(final AuthenticationLogEntry entry) {
+            if (!running || !enqueue(entry)) {
+                write(entry);
+            } else if (!running && pending.remove(entry)) {
+                write(entry); //Shutdown started meanwhile and the last drain may be over
+            }
+        }
+
+        private boolean enqueue(final AuthenticationLogEntry entry) {
+            switch (backpressure) {
+                case BLOCK:
+                    try {
+                        while (running) {
+                            if (pending.offer(entry, linger, TimeUnit.MILLISECONDS)) return true;
+                        }
+                        return false;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                case DROP_OLDEST:
+                    while (!pending.offer(entry)) {
+                        if (pending.poll() != null) dropped.increment();
+                    }
+                    return true;
+                default:
+                    return pending.offer(entry);
+            }
+        }
+
+        private void write(final AuthenticationLogEntry entry) {
+            write(entry, TimeOrderedIds.next());
+        }
+
+        private void write(final AuthenticationLogEntry entry, final long seq) {
+            if (entry.getState() == AuthenticationState.FAILED) {
+                jdbc.update(INSERT_FAILED, seq, entry.getPrincipal().getName(), entry.getUtc());
+                return;
+            }
+            jdbc.update(INSERT, seq, entry.getPrincipal().getName(), entry.getUtc());
+            recent.record(entry.getPrincipal().getName(), entry.getUtc(), seq);
+        }
+
+        private void flushLoop() {
+            final java.util.List<AuthenticationLogEntry> batch = new ArrayList<>(batchSize);
+            long deadline = 0;
+            try {
+                while (true) {
+                    if (batch.isEmpty()) {
+                        final AuthenticationLogEntry first = pending.poll(linger, TimeUnit.MILLISECONDS);
+                        if (first == null) {
+                            if (running) continue; else break;
+                        }
+                        batch.add(first);
+                        deadline = System.currentTimeMillis() + linger;
+                    }
+                    pending.drainTo(batch, batchSize - batch.size());
+                    final long remaining = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        flush(batch);
+                        continue;
+                    }
+                    final AuthenticationLogEntry next = pending.poll(remaining, TimeUnit.MILLISECONDS);
+                    if (next != null) batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                pending.drainTo(batch);
+                flush(batch);
+            }
+        }
+
+        private void flush(final java.util.List<AuthenticationLogEntry> batch) {
+            if (batch.isEmpty()) return;
+            final long started = System.nanoTime();
+            final long[] seqs = new long[batch.size()];
+            for (int i = 0; i < seqs.length; i++) {
+                seqs[i] = TimeOrderedIds.next();
+            }
+            try {
+                insert(INSERT, AuthenticationState.SUCCESSFUL, batch, seqs);
+                insert(INSERT_FAILED, AuthenticationState.FAILED, batch, seqs);
+                for (int i = 0; i < seqs.length; i++) {
+                    final AuthenticationLogEntry entry = batch.get(i);
+                    if (entry.getState() == AuthenticationState.SUCCESSFUL) {
+                        recent.record(entry.getPrincipal().getName(), entry.getUtc(), seqs[i]);
+                    }
+                }
+                log.debug("Flushed {} journal entries", batch.size());
+            } catch (RuntimeException e) {
+                log.warn("Failed to flush {} journal entries, writing them one by one", batch.size(), e);
+                for (int i = 0; i < seqs.length; i++) {
+                    retry(batch.get(i), seqs[i]);
+                }
+            } finally {
+                flushTime.since(started);
+                batch.clear();
+            }
+        }
+
+        private void insert(final String sql, final AuthenticationState state, final java.util.List<AuthenticationLogEntry> batch, final long[] seqs) {
+            final java.util.List<Integer> rows = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.get(i).getState() == state) rows.add(i);
+            }
+            if (rows.isEmpty()) return;
+            jdbc.batchUpdate(sql, rows, rows.size(), (statement, row) -> {
+                statement.setLong(1, seqs[row]);
+                statement.setString(2, batch.get(row).getPrincipal().getName());
+                statement.setLong(3, batch.get(row).getUtc());
+            });
+        }
+
+        private void retry(final AuthenticationLogEntry entry, final long seq) {
+            try {
+                write(entry, seq);
+            } catch (DuplicateKeyException e) { //The batch did write that one
+                if (entry.getState() == AuthenticationState.SUCCESSFUL) {
+                    recent.record(entry.getPrincipal().getName(), entry.getUtc(), seq);
+                }
+            } catch (RuntimeException e) {
+                lost.increment();
+                log.error("Lost journal entry {} {} at {}", entry.getState(), entry.getPrincipal().getName(), entry.getUtc(), e);
+            }
+        }
+
+        @Override
+        public void destroy() throws InterruptedException {
+            running = false;
+            flusher.join();
+            final java.util.List<AuthenticationLogEntry> rest = new ArrayList<>();
+            pending.drainTo(rest); //Enqueued after the last drain of the flusher
+            flush(rest);
+        }
+
+        @Override
+        public Collection<Metric<?>> metrics() {
+            return Arrays.asList(
+                    new Metric<>("journal.async.pending", pending.size()),
+                    new Metric<>("journal.async.dropped", dropped.sum()),
+                    new Metric<>("journal.async.lost", lost.sum()));
+        }
     }
 }
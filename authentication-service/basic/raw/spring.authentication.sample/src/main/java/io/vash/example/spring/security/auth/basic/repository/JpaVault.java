@@ -1,30 +1,43 @@
 package io.vash.example.spring.security.auth.basic.repository;
 
 import io.vash.example.spring.security.auth.basic.repository.JpaVault.CredentialsData;
+import io.vash.example.spring.security.auth.basic.service.Audit;
+import io.vash.example.spring.security.auth.basic.service.Audit.Event;
 import io.vash.example.spring.security.auth.basic.service.AuthenticationVault;
+import io.vash.example.spring.security.auth.basic.service.CredentialHasher;
+import io.vash.example.spring.security.auth.basic.service.Latencies;
+import io.vash.example.spring.security.auth.basic.service.Latencies.Histogram;
+import io.vavr.collection.List;
 import io.vavr.control.Option;
 import io.vavr.control.Try;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.Value;
-import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Table;
-import javax.transaction.Transactional;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 interface JpaVault extends CrudRepository<CredentialsData,String> {
 
@@ -39,27 +52,117 @@ interface JpaVault extends CrudRepository<CredentialsData,String> {
         String token;
     }
 
-    @Slf4j
     @Primary
     @Repository
+    @ConditionalOnProperty(name = "vault.store", havingValue = "jpa", matchIfMissing = true)
     class JpaBasicAuthenticationVault implements AuthenticationVault {
 
+        static final String INSERT = "insert into credentials (key, token) values (?, ?)";
+        static final String REHASH = "update credentials set token = ? where key = ? and token = ?";
+        static final String TAKEN = "select key from credentials where key in (%s)";
+
         private final JpaVault vault;
-        private final PasswordEncoder encoder;
+        private final JdbcTemplate jdbc;
+        private final TransactionTemplate transactions;
+        private final CredentialHasher.Delegating encoder;
+        private final VerifiedCredentialCache verified;
+        private final RegisteredKeys registered;
+        private final Audit audit;
+
+        private final Histogram lookupTime;
+        private final Histogram cachedTime;
+        private final Histogram hashTime;
+        private final Histogram registerTime;
 
         @Autowired
-        JpaBasicAuthenticationVault(JpaVault vault, PasswordEncoder encoder) {
+        JpaBasicAuthenticationVault(JpaVault vault, JdbcTemplate jdbc, PlatformTransactionManager transactions,
+                                    CredentialHasher.Delegating encoder, VerifiedCredentialCache verified,
+                                    RegisteredKeys registered, Audit audit, Latencies latencies) {
             this.vault = vault;
+            this.jdbc = jdbc;
+            this.transactions = new TransactionTemplate(transactions);
             this.encoder = encoder;
+            this.verified = verified;
+            this.registered = registered;
+            this.audit = audit;
+            this.lookupTime = latencies.histogram("vault.lookup");
+            this.cachedTime = latencies.histogram("vault.cached");
+            this.hashTime = latencies.histogram("vault.hash");
+            this.registerTime = latencies.histogram("vault.register");
         }
 
         @Override
-        @Transactional
         public Authentication register(final Principal principal) throws SecurityException {
             Objects.requireNonNull(principal, "principal can not be null");
             return tryToRegister(principal).getOrElseThrow(() -> collision(principal));
         }
 
+        /**
+         * One query finds the logins already taken, the tokens of the others are hashed in parallel on the common
+         * fork-join pool and inserted in one JDBC batch. Should a concurrent registration take one of them meanwhile,
+         * the batch rolls back and they are inserted one by one, so each conflict is reported on its own.
+         */
+        @Override
+        public List<Try<Authentication>> registerAll(final java.util.List<? extends Principal> principals) {
+            final Set<String> taken = taken(principals);
+            final Set<String> seen = new HashSet<>();
+            final java.util.List<Try<Authentication>> results = new ArrayList<>(Collections.nCopies(principals.size(), null));
+            final java.util.List<Registration> fresh = new ArrayList<>(principals.size());
+            for (int i = 0; i < principals.size(); i++) {
+                final Key key = Key.of(principals.get(i));
+                if (taken.contains(key.getValue()) || !seen.add(key.getValue())) {
+                    this.audit.event(Event.CONFLICT, key.getValue());
+                    results.set(i, Try.failure(collision(principals.get(i))));
+                } else {
+                    fresh.add(new Registration(i, key, nextToken()));
+                }
+            }
+            fresh.parallelStream().forEach(registration -> registration.hash(this.encoder));
+
+            final java.util.List<Registration> hashed = new ArrayList<>(fresh.size());
+            for (Registration registration : fresh) {
+                if (registration.failure != null) results.set(registration.index, Try.failure(registration.failure));
+                else hashed.add(registration);
+            }
+            try {
+                this.transactions.execute(status -> this.jdbc.batchUpdate(INSERT, hashed, hashed.size(), (statement, registration) -> {
+                    statement.setString(1, registration.key.getValue());
+                    statement.setString(2, registration.secured);
+                }));
+                for (Registration registration : hashed) {
+                    results.set(registration.index, Try.success(registered(registration)));
+                }
+            } catch (DataIntegrityViolationException e) {
+                for (Registration registration : hashed) {
+                    try {
+                        this.jdbc.update(INSERT, registration.key.getValue(), registration.secured);
+                        results.set(registration.index, Try.success(registered(registration)));
+                    } catch (DuplicateKeyException conflict) {
+                        this.audit.event(Event.CONFLICT, registration.key.getValue());
+                        results.set(registration.index, Try.failure(collision(principals.get(registration.index))));
+                    }
+                }
+            }
+            return List.ofAll(results);
+        }
+
+        private Set<String> taken(final java.util.List<? extends Principal> principals) {
+            final java.util.List<String> keys = principals.stream()
+                    .map(principal -> Key.of(principal).getValue())
+                    .filter(this.registered::mightContain)
+                    .collect(Collectors.toList());
+            if (keys.isEmpty()) return Collections.emptySet();
+            final String placeholders = String.join(", ", Collections.nCopies(keys.size(), "?"));
+            return new HashSet<>(this.jdbc.queryForList(String.format(TAKEN, placeholders), String.class, keys.toArray()));
+        }
+
+        private Authentication registered(final Registration registration) {
+            this.registered.add(registration.key.getValue());
+            this.verified.invalidate(registration.key.getValue());
+            this.audit.event(Event.REGISTERED, registration.key.getValue());
+            return new UsernamePasswordAuthenticationToken(registration.key.getValue(), registration.token);
+        }
+
         @Override
         public Authentication match(final Authentication authentication) throws SecurityException {
             Objects.requireNonNull(authentication,"vault can not be null");
@@ -68,9 +171,20 @@ interface JpaVault extends CrudRepository<CredentialsData,String> {
         }
 
         private Option<CredentialsData> findSecret(final Key key) {
-            log.info("Lookup for key: {}",key);
-            return Option.of(this.vault.findOne(key.getValue()))
-                    .onEmpty(() -> log.info("Not found key: {}", key));
+            final CredentialsData secret = this.registered.mightContain(key.getValue()) ? lookup(key) : null;
+            if (secret == null) {
+                this.audit.event(Event.UNKNOWN, key.getValue());
+            }
+            return Option.of(secret);
+        }
+
+        private CredentialsData lookup(final Key key) {
+            final long started = System.nanoTime();
+            try {
+                return this.vault.findOne(key.getValue());
+            } finally {
+                this.lookupTime.since(started);
+            }
         }
 
         private Option<Authentication> findMatch(final Authentication authentication) {
@@ -80,30 +194,67 @@ interface JpaVault extends CrudRepository<CredentialsData,String> {
         }
 
         private Authentication compare(Key key, CredentialsData secretCredentials, Authentication authentication) {
-            log.info("Compare secret for matching key {}",key);
-
             final Object testCredentials = authentication.getCredentials();
 
-            if(testCredentials instanceof String && this.encoder.matches(testCredentials.toString(),secretCredentials.token)) {
-                log.info("Provided vault are valid.");
+            if(testCredentials instanceof String && matches(key, testCredentials.toString(), secretCredentials)) {
+                this.audit.event(Event.VERIFIED, key.getValue());
                 return new UsernamePasswordAuthenticationToken(key.getValue(),testCredentials, Collections.emptyList());
             } else {
-                log.info("Provided vault are invalid");
+                this.audit.event(Event.REJECTED, key.getValue());
                 return null;
             }
         }
 
+        private boolean matches(Key key, String testCredentials, CredentialsData secretCredentials) {
+            long started = System.nanoTime();
+            if (this.verified.contains(key.getValue(), testCredentials)) {
+                this.cachedTime.since(started);
+                return true;
+            }
+            started = System.nanoTime();
+            final boolean matches = this.encoder.matches(testCredentials, secretCredentials.token);
+            this.hashTime.since(started);
+            if (matches) {
+                rehash(key, testCredentials, secretCredentials.token);
+                this.verified.put(key.getValue(), testCredentials);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Moves a verified credential to the current hash format; the condition on the old hash lets a concurrent
+         * login or re-registration win.
+         */
+        private void rehash(Key key, String testCredentials, String hash) {
+            if (this.encoder.upgradeEncoding(hash)) {
+                this.jdbc.update(REHASH, this.encoder.encode(testCredentials), key.getValue(), hash);
+            }
+        }
+
         private Try<Authentication> tryToRegister(final Principal principal) {
             final Key key = Key.of(principal);
-            log.info("Attempt to register in vault {}",key);
-            return vault.exists(key.getValue()) ? Try.failure(collision(principal)) : Try.success(putToken(key));
+            try {
+                return Try.success(putToken(key));
+            } catch (DuplicateKeyException e) {
+                this.audit.event(Event.CONFLICT, key.getValue());
+                return Try.failure(collision(principal));
+            }
         }
 
-        private Authentication putToken(final Principal principal) {
-            log.info("Adding key to vault {}",principal);
+        /**
+         * Plain insert in a single round trip: the primary key decides which concurrent registration wins.
+         */
+        private Authentication putToken(final Principal principal) throws DuplicateKeyException {
+            final long started = System.nanoTime();
             final String token = nextToken();
             final String secured = this.encoder.encode(token);
-            this.vault.save(new CredentialsData(principal.getName(),secured));
+            this.hashTime.since(started);
+            this.jdbc.update(INSERT, principal.getName(), secured);
+            this.registerTime.since(started);
+            this.registered.add(principal.getName());
+            this.verified.invalidate(principal.getName());
+            this.audit.event(Event.REGISTERED, principal.getName());
             return new UsernamePasswordAuthenticationToken(principal.getName(),token);
         }
 
@@ -111,6 +262,28 @@ interface JpaVault extends CrudRepository<CredentialsData,String> {
             return UUID.randomUUID().toString();
         }
 
+        private static final class Registration {
+            final int index;
+            final Key key;
+            final String token;
+            String secured;
+            RuntimeException failure;
+
+            Registration(int index, Key key, String token) {
+                this.index = index;
+                this.key = key;
+                this.token = token;
+            }
+
+            void hash(final CredentialHasher.Delegating encoder) {
+                try {
+                    this.secured = encoder.encode(this.token);
+                } catch (RuntimeException e) { //Overloaded, this one only
+                    this.failure = e;
+                }
+            }
+        }
+
         @Value
         private static class Key implements Principal  {
 
@@ -0,0 +1,325 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import io.vash.example.spring.security.auth.basic.service.Audit;
+import io.vash.example.spring.security.auth.basic.service.Audit.Event;
+import io.vash.example.spring.security.auth.basic.service.AuthenticationInfo;
+import io.vash.example.spring.security.auth.basic.service.AuthenticationJournal;
+import io.vash.example.spring.security.auth.basic.service.AuthenticationJournal.AuthenticationLogEntry;
+import io.vash.example.spring.security.auth.basic.service.AuthenticationJournal.AuthenticationState;
+import io.vash.example.spring.security.auth.basic.service.Latencies;
+import io.vash.example.spring.security.auth.basic.service.Latencies.Histogram;
+import io.vavr.collection.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+import static io.vash.example.spring.security.auth.basic.service.Hashes.hash;
+
+/**
+ * Journal in append only, memory mapped segment files under {@code journal.mapped.directory}, enabled with
+ * {@code journal.mode=mapped}. It serves the reads as well, nothing goes through JPA.
+ *
+ * Each segment holds {@code journal.mapped.segment-size} bytes of fixed 32 byte records:
+ *
+ * <pre>
+ *     principal (8) | utc (8) | previous (8) | state (4) | crc32 of the first 28 bytes (4)
+ * </pre>
+ *
+ * {@code principal} is the {@link io.vash.example.spring.security.auth.basic.service.Hashes#hash(String) hash} of
+ * the login and {@code previous} the number of the record before of the same login (-1 for the first), so the
+ * newest entries of a login are a walk down its chain from the head kept in memory. Failed attempts are written unchained. A write is one store into the mapping, segments are forced to
+ * disk every {@code journal.mapped.force} ms and when they fill up: a crash loses at most that much.
+ *
+ * On startup the segments are scanned to rebuild the heads, up to the first record whose checksum does not hold,
+ * which is where the journal continues.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "journal.mode", havingValue = "mapped")
+class MappedJournal implements AuthenticationJournal, AuthenticationInfo, PublicMetrics, DisposableBean {
+
+    static final int RECORD = 32;
+    static final String SUFFIX = ".journal";
+
+    private static final int SUCCESSFUL = 0;
+    private static final int FAILED = 1;
+
+    private final Path directory;
+    private final Audit audit;
+    private final long perSegment;
+    private final Heads heads = new Heads();
+    private final ByteBuffer scratch = ByteBuffer.allocate(RECORD);
+    private final CRC32 crc = new CRC32();
+    private final Histogram writeTime;
+    private final Histogram readTime;
+
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private long next;
+
+    @Autowired
+    MappedJournal(@Value("${journal.mapped.directory:data/journal}") String directory,
+                  @Value("${journal.mapped.segment-size:67108864}") int segmentSize,
+                  Audit audit,
+                  Latencies latencies) throws IOException {
+        this.directory = Files.createDirectories(Paths.get(directory));
+        this.audit = audit;
+        this.writeTime = latencies.histogram("journal.write");
+        this.readTime = latencies.histogram("journal.read");
+        this.perSegment = segmentSize(segmentSize) / RECORD;
+        recover();
+    }
+
+    @Override
+    public AuthenticationLogEntry success(final Principal principal) {
+        Objects.requireNonNull(principal,"identifier can not be null");
+        final long started = System.nanoTime();
+        final AuthenticationLogEntry entry = new AuthenticationLogEntry(principal,AuthenticationState.SUCCESSFUL,System.currentTimeMillis());
+        append(hash(principal.getName()), entry.getUtc(), SUCCESSFUL);
+        writeTime.since(started);
+        audit.event(Event.JOURNALED, principal.getName());
+        return entry;
+    }
+
+    @Override
+    public AuthenticationLogEntry failure(final Principal principal) {
+        Objects.requireNonNull(principal,"identifier can not be null");
+        final AuthenticationLogEntry entry = new AuthenticationLogEntry(principal,AuthenticationState.FAILED,System.currentTimeMillis());
+        append(hash(principal.getName()), entry.getUtc(), FAILED);
+        return entry;
+    }
+
+    @Override
+    public List<AuthenticationLogEntry> successfulAttempts(final Principal principal, int limit) {
+        final long started = System.nanoTime();
+        final java.util.List<AuthenticationLogEntry> entries = new java.util.ArrayList<>(Math.max(0, Math.min(limit, 64)));
+        visit(principal, Long.MAX_VALUE, Long.MAX_VALUE, limit,
+                (utc, record) -> entries.add(new AuthenticationLogEntry(principal, AuthenticationState.SUCCESSFUL, utc)));
+        readTime.since(started);
+        return List.ofAll(entries);
+    }
+
+    @Override
+    public void successfulAttempts(final Principal principal, long before, long seq, int limit, Visitor visitor) {
+        final long started = System.nanoTime();
+        try {
+            visit(principal, before, seq, limit, visitor);
+        } finally {
+            readTime.since(started);
+        }
+    }
+
+    /**
+     * The record number is the journal id of an entry: the cursor is {@code (before, seq)} over (utc, record).
+     */
+    private void visit(final Principal principal, long before, long seq, int limit, Visitor visitor) {
+        final long key = hash(principal.getName());
+        long record = head(key);
+        final MappedByteBuffer[] mapped = segments; //After the head, which may be in a segment mapped since
+        int visited = 0;
+        while (record >= 0 && visited < limit) {
+            final MappedByteBuffer segment = mapped[(int) (record / perSegment)];
+            final int offset = (int) (record % perSegment) * RECORD;
+            final long utc = segment.getLong(offset + 8);
+            if (segment.getLong(offset) != key) break; //Chains never leave their principal, but never trust a pointer
+            if (utc < before || utc == before && record < seq) {
+                visitor.visit(utc, record);
+                visited++;
+            }
+            record = segment.getLong(offset + 16);
+        }
+    }
+
+    private synchronized long head(final long key) {
+        return heads.get(key);
+    }
+
+    private synchronized void append(final long key, final long utc, final int state) {
+        final int index = (int) (next / perSegment);
+        if (index == segments.length) {
+            roll();
+        }
+        final long previous = state == SUCCESSFUL ? heads.get(key) : -1;
+        scratch.clear();
+        scratch.putLong(key).putLong(utc).putLong(previous).putInt(state);
+        crc.reset();
+        crc.update(scratch.array(), 0, RECORD - 4);
+        scratch.putInt((int) crc.getValue());
+        scratch.flip();
+        final MappedByteBuffer segment = segments[index];
+        segment.position((int) (next % perSegment) * RECORD);
+        segment.put(scratch);
+        if (state == SUCCESSFUL) heads.put(key, next);
+        next++;
+    }
+
+    @Scheduled(fixedDelayString = "${journal.mapped.force:1000}")
+    void force() {
+        final MappedByteBuffer[] mapped = segments;
+        if (mapped.length > 0) mapped[mapped.length - 1].force();
+    }
+
+    @Override
+    public synchronized void destroy() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("journal.mapped.records", records()),
+                new Metric<>("journal.mapped.segments", segments.length),
+                new Metric<>("journal.mapped.principals", principals()));
+    }
+
+    private synchronized long records() {
+        return next;
+    }
+
+    private synchronized int principals() {
+        return heads.size;
+    }
+
+    /**
+     * Maps the next segment, the full one before it is forced first.
+     */
+    private void roll() {
+        final MappedByteBuffer[] mapped = segments;
+        if (mapped.length > 0) mapped[mapped.length - 1].force();
+        final MappedByteBuffer[] grown = Arrays.copyOf(mapped, mapped.length + 1);
+        grown[mapped.length] = map(mapped.length);
+        segments = grown;
+    }
+
+    private MappedByteBuffer map(final int index) {
+        final Path file = directory.resolve(String.format("%08d%s", index, SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, perSegment * RECORD); //The mapping outlives the channel
+        } catch (IOException e) {
+            throw new IllegalStateException("Can not map journal segment " + file, e);
+        }
+    }
+
+    /**
+     * Segments keep the size they were created with, whatever is configured now.
+     */
+    private long segmentSize(final int configured) throws IOException {
+        final Path first = directory.resolve(String.format("%08d%s", 0, SUFFIX));
+        final long size = Files.exists(first) ? Files.size(first) : configured;
+        if (size < RECORD || size % RECORD != 0) {
+            throw new IllegalStateException("Journal segment size must be a multiple of " + RECORD + ", not " + size);
+        }
+        return size;
+    }
+
+    private synchronized void recover() throws IOException {
+        final long started = System.currentTimeMillis();
+        scan:
+        for (int index = 0; Files.exists(directory.resolve(String.format("%08d%s", index, SUFFIX))); index++) {
+            roll();
+            final MappedByteBuffer segment = segments[index];
+            final ByteBuffer view = segment.duplicate();
+            for (int record = 0; record < perSegment; record++) {
+                final int offset = record * RECORD;
+                if (!valid(view, offset)) {
+                    clear(segment, offset);
+                    break scan;
+                }
+                if (segment.getInt(offset + 24) == SUCCESSFUL) heads.put(segment.getLong(offset), next);
+                next++;
+            }
+        }
+        for (int index = segments.length; Files.deleteIfExists(directory.resolve(String.format("%08d%s", index, SUFFIX))); index++) {
+            log.warn("Dropped journal segment {} past the last valid record", index);
+        }
+        log.info("Recovered {} journal records of {} logins in {} ms", next, heads.size, System.currentTimeMillis() - started);
+    }
+
+    private boolean valid(final ByteBuffer view, final int offset) {
+        view.limit(offset + RECORD - 4).position(offset);
+        crc.reset();
+        crc.update(view);
+        view.limit(view.capacity());
+        return view.getInt(offset + RECORD - 4) == (int) crc.getValue();
+    }
+
+    /**
+     * Zeroes the torn tail up to the end of the segment, so records that reached the disk past it, even past a
+     * zeroed one, can not come back after the next crash.
+     */
+    private void clear(final MappedByteBuffer segment, final int from) {
+        for (int offset = from; offset < segment.capacity(); offset += 8) {
+            segment.putLong(offset, 0);
+        }
+        segment.force();
+    }
+
+    /**
+     * Newest record number per principal hash, open addressing over primitive arrays. Slots with a zero value
+     * are free, so record numbers are stored plus one.
+     */
+    private static final class Heads {
+        private long[] keys = new long[1024];
+        private long[] values = new long[1024];
+        private int size;
+
+        long get(final long key) {
+            for (int slot = slot(key, keys.length); ; slot = (slot + 1) & (keys.length - 1)) {
+                if (values[slot] == 0) return -1;
+                if (keys[slot] == key) return values[slot] - 1;
+            }
+        }
+
+        void put(final long key, final long record) {
+            if (2 * (size + 1) > keys.length) grow();
+            for (int slot = slot(key, keys.length); ; slot = (slot + 1) & (keys.length - 1)) {
+                if (values[slot] == 0) {
+                    keys[slot] = key;
+                    values[slot] = record + 1;
+                    size++;
+                    return;
+                }
+                if (keys[slot] == key) {
+                    values[slot] = record + 1;
+                    return;
+                }
+            }
+        }
+
+        private void grow() {
+            final long[] oldKeys = keys;
+            final long[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldValues.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != 0) put(oldKeys[i], oldValues[i] - 1);
+            }
+        }
+
+        private static int slot(final long key, final int length) {
+            return (int) (key ^ (key >>> 32)) & (length - 1);
+        }
+    }
+}
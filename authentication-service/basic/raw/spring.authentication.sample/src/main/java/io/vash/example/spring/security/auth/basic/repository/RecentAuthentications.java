@@ -0,0 +1,160 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-through cache of the newest successful authentication timestamps per key.
+ *
+ * Each key keeps its newest {@code capacity} rows as primitive timestamps and ids, ordered newest first
+ * by timestamp then id; at most {@code principals} keys are kept, split over segments that evict their
+ * least recently used key. Entries are only recorded into once present, and are installed by
+ * {@link #warm} from a database read. A warm is discarded when a record for a key of the same stripe
+ * raced with the read, so the cache never misses a row that is already in the journal table. A row
+ * saved before the read but recorded after the warm is already cached under its id and is not added
+ * again; rows recorded out of order take their place, so the cache holds what the table would return.
+ */
+@Component
+class RecentAuthentications implements PublicMetrics {
+
+    private static final int SEGMENTS = 16;
+    private static final int STRIPES = 1024;
+
+    private final int capacity;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final AtomicLongArray writes = new AtomicLongArray(STRIPES);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    RecentAuthentications(@Value("${journal.recent.capacity:16}") int capacity,
+                          @Value("${journal.recent.principals:100000}") int principals) {
+        this.capacity = capacity;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, principals / SEGMENTS));
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Newest first copy of up to {@code limit} timestamps, {@code null} when the key is not cached.
+     */
+    long[] newest(final String key, final int limit) {
+        final Segment segment = segment(key);
+        synchronized (segment) {
+            final Entries entries = segment.get(key);
+            if (entries == null) {
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entries.newest(limit);
+        }
+    }
+
+    void record(final String key, final long utc, final long seq) {
+        writes.incrementAndGet(stripe(key));
+        final Segment segment = segment(key);
+        synchronized (segment) {
+            final Entries entries = segment.get(key);
+            if (entries != null) entries.add(utc, seq);
+        }
+    }
+
+    long stamp(final String key) {
+        return writes.get(stripe(key));
+    }
+
+    /**
+     * Installs the rows {@code (utc, seq)} read after {@link #stamp} was taken.
+     */
+    void warm(final String key, final long stamp, final long[] utc, final long[] seq, final int size) {
+        final Segment segment = segment(key);
+        synchronized (segment) {
+            if (writes.get(stripe(key)) != stamp || segment.containsKey(key)) return;
+            final Entries entries = new Entries(capacity);
+            for (int i = 0; i < size; i++) {
+                entries.add(utc[i], seq[i]);
+            }
+            segment.put(key, entries);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("journal.recent.hits", hits.sum()),
+                new Metric<>("journal.recent.misses", misses.sum()));
+    }
+
+    private Segment segment(final String key) {
+        return segments[spread(key) & (SEGMENTS - 1)];
+    }
+
+    private int stripe(final String key) {
+        return (spread(key) >>> 4) & (STRIPES - 1);
+    }
+
+    private static int spread(final String key) {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Segment extends LinkedHashMap<String, Entries> {
+        private final int principals;
+
+        Segment(int principals) {
+            super(16, 0.75f, true);
+            this.principals = principals;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entries> eldest) {
+            return size() > principals;
+        }
+    }
+
+    /**
+     * Newest first, a handful of rows: inserting in place is a short copy.
+     */
+    private static final class Entries {
+        private final long[] utc;
+        private final long[] seq;
+        private int size;
+
+        Entries(int capacity) {
+            this.utc = new long[capacity];
+            this.seq = new long[capacity];
+        }
+
+        void add(long utc, long seq) {
+            int at = 0;
+            while (at < size && (this.utc[at] > utc || this.utc[at] == utc && this.seq[at] > seq)) {
+                at++;
+            }
+            if (at == this.utc.length || (at < size && this.seq[at] == seq)) return; //Too old, or cached already
+            final int moved = Math.min(size, this.utc.length - 1) - at;
+            System.arraycopy(this.utc, at, this.utc, at + 1, moved);
+            System.arraycopy(this.seq, at, this.seq, at + 1, moved);
+            this.utc[at] = utc;
+            this.seq[at] = seq;
+            if (size < this.utc.length) size++;
+        }
+
+        long[] newest(int limit) {
+            return Arrays.copyOf(utc, Math.max(0, Math.min(limit, size)));
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.vash.example.spring.security.auth.basic.service.Hashes.hash;
+
+/**
+ * Bloom filter over the keys of the {@code credentials} table, enabled with {@code vault.filter.enabled=true}, so
+ * that unknown logins are rejected without a query.
+ *
+ * Sized for {@code vault.filter.expected} keys at a {@code vault.filter.fpp} false positive rate: at 1% that is
+ * 9.6 bits and 7 hashes per key, about 1.2 MB per million keys. It is built once the application is ready, updated
+ * by every registration on this node and rebuilt every {@code vault.filter.rebuild} ms, growing with the table.
+ * Registrations made by other nodes on a shared database are only seen after the next rebuild, until then those
+ * logins are rejected here: keep it disabled unless this node is the only writer.
+ */
+@Slf4j
+@Component
+class RegisteredKeys implements PublicMetrics {
+
+    static final String KEYS = "select key from credentials";
+    static final String COUNT = "select count(*) from credentials";
+
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final long expected;
+    private final double fpp;
+
+    private volatile Bloom current;
+    private volatile Bloom building;
+
+    private final LongAdder rejected = new LongAdder();
+
+    RegisteredKeys(JdbcTemplate jdbc,
+                   @Value("${vault.filter.enabled:false}") boolean enabled,
+                   @Value("${vault.filter.expected:1000000}") long expected,
+                   @Value("${vault.filter.fpp:0.01}") double fpp) {
+        this.jdbc = jdbc;
+        this.enabled = enabled;
+        this.expected = expected;
+        this.fpp = fpp;
+    }
+
+    /**
+     * False only for keys that were never registered. Always true while the filter is disabled or not built yet.
+     */
+    boolean mightContain(final String key) {
+        final Bloom bloom = current;
+        if (bloom == null || bloom.mightContain(key)) return true;
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Called once the insert committed. A rebuild sets {@code building} before it scans and publishes {@code current}
+     * before it clears {@code building}: reading them in that order, the key reaches every filter the row may be
+     * missing from. A rebuild that starts later sees the row.
+     */
+    void add(final String key) {
+        final Bloom next = building;
+        if (next != null) next.add(key);
+        final Bloom bloom = current;
+        if (bloom != null && bloom != next) bloom.add(key);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void build() {
+        if (enabled) rebuild();
+    }
+
+    @Scheduled(initialDelayString = "${vault.filter.rebuild:600000}", fixedDelayString = "${vault.filter.rebuild:600000}")
+    void scheduledRebuild() {
+        if (enabled) rebuild();
+    }
+
+    synchronized void rebuild() {
+        final long count = jdbc.queryForObject(COUNT, Long.class);
+        final Bloom next = new Bloom(Math.max(expected, 2 * count), fpp);
+        building = next;
+        try {
+            jdbc.query(KEYS, row -> {
+                next.add(row.getString(1));
+            });
+            current = next;
+            log.debug("Rebuilt filter of {} keys in {} bytes", next.size(), next.bytes());
+        } finally {
+            building = null;
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final Bloom bloom = current;
+        return Arrays.asList(
+                new Metric<>("vault.filter.rejected", rejected.sum()),
+                new Metric<>("vault.filter.keys", bloom == null ? 0 : bloom.size()),
+                new Metric<>("vault.filter.bytes", bloom == null ? 0 : bloom.bytes()));
+    }
+
+    /**
+     * Bits in an {@link AtomicLongArray}, set with CAS so adds never lock. The k indexes come from two halves of one
+     * 64 bit hash ({@code h1 + i * h2}).
+     */
+    static final class Bloom {
+
+        private final AtomicLongArray words;
+        private final long bits;
+        private final int hashes;
+        private final LongAdder size = new LongAdder();
+
+        Bloom(long expected, double fpp) {
+            final long m = (long) Math.ceil(-expected * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            this.words = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE, (m + 63) >>> 6));
+            this.bits = (long) words.length() << 6;
+            this.hashes = Math.max(1, (int) Math.round((double) bits / expected * Math.log(2)));
+        }
+
+        void add(final String key) {
+            final long hash = hash(key);
+            final int h1 = (int) hash;
+            final int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                final long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bits;
+                final int word = (int) (bit >>> 6);
+                final long mask = 1L << bit;
+                long value;
+                while (((value = words.get(word)) & mask) == 0 && !words.compareAndSet(word, value, value | mask)) {
+                    //retry
+                }
+            }
+            size.increment();
+        }
+
+        boolean mightContain(final String key) {
+            final long hash = hash(key);
+            final int h1 = (int) hash;
+            final int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= hashes; i++) {
+                final long bit = ((h1 + (long) i * h2) & Long.MAX_VALUE) % bits;
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        long size() {
+            return size.sum();
+        }
+
+        long bytes() {
+            return bits >>> 3;
+        }
+    }
+}
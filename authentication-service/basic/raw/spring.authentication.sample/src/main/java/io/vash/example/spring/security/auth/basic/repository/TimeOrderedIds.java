@@ -0,0 +1,37 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side generator of unique, time ordered identifiers.
+ *
+ * Layout (63 bits): milliseconds since {@link #EPOCH} (41) | sequence within millisecond (12) | node (10).
+ * When the sequence overflows, the generator borrows from the next millisecond, so ids stay unique and
+ * monotonic per node without locking. The node is taken from the {@code journal.node-id} system property
+ * and must differ between instances writing to the same table; otherwise it is random.
+ */
+final class TimeOrderedIds {
+
+    static final long EPOCH = 1500000000000L; // 2017-07-14T02:40:00Z
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long NODE = Integer.getInteger("journal.node-id",
+            ThreadLocalRandom.current().nextInt(1 << NODE_BITS)) & ((1 << NODE_BITS) - 1);
+
+    private static final AtomicLong last = new AtomicLong();
+
+    private TimeOrderedIds() {
+    }
+
+    static long next() {
+        final long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+        long previous, current;
+        do {
+            previous = last.get();
+            current = now > previous ? now : previous + 1;
+        } while (!last.compareAndSet(previous, current));
+        return current << NODE_BITS | NODE;
+    }
+}
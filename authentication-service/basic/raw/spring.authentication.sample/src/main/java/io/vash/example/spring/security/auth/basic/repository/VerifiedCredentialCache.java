@@ -0,0 +1,135 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of recently verified credentials, consulted before the (slow) password encoder.
+ *
+ * Entries are keyed by login and hold a HMAC-SHA256 digest of login and credential under a key
+ * generated per process, so plain tokens never stay in memory. Entries expire after {@code ttl}
+ * and the eldest one is evicted once {@code capacity} is reached.
+ */
+@Slf4j
+@Component
+class VerifiedCredentialCache implements PublicMetrics {
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec secret;
+    private final ThreadLocal<Mac> macs;
+    private final Map<String, Verified> entries;
+    private final long ttl;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    VerifiedCredentialCache(@Value("${vault.cache.capacity:10000}") int capacity,
+                            @Value("${vault.cache.ttl:300000}") long ttl) {
+        this.secret = new SecretKeySpec(randomKey(), ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        this.entries = new LinkedHashMap<String, Verified>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Verified> eldest) {
+                final boolean evict = size() > capacity || eldest.getValue().expired(System.currentTimeMillis());
+                if (evict) evictions.increment();
+                return evict;
+            }
+        };
+        this.ttl = ttl;
+    }
+
+    boolean contains(final String login, final String credential) {
+        final byte[] digest = digest(login, credential);
+        final Verified verified;
+        synchronized (entries) {
+            verified = entries.get(login);
+        }
+        if (verified != null && !verified.expired(System.currentTimeMillis()) && MessageDigest.isEqual(verified.digest, digest)) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    void put(final String login, final String credential) {
+        final Verified verified = new Verified(digest(login, credential), System.currentTimeMillis() + ttl);
+        synchronized (entries) {
+            entries.remove(login); //Re-insert so the entry moves to the young end
+            entries.put(login, verified);
+        }
+    }
+
+    void invalidate(final String login) {
+        synchronized (entries) {
+            entries.remove(login);
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        final int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return Arrays.asList(
+                new Metric<>("vault.cache.hits", hits.sum()),
+                new Metric<>("vault.cache.misses", misses.sum()),
+                new Metric<>("vault.cache.evictions", evictions.sum()),
+                new Metric<>("vault.cache.size", size));
+    }
+
+    private byte[] digest(final String login, final String credential) {
+        final Mac mac = macs.get();
+        mac.update(login.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(credential.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            final Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(secret);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Can not initialize " + ALGORITHM, e);
+        }
+    }
+
+    private static byte[] randomKey() {
+        final byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+
+    private static final class Verified {
+        final byte[] digest;
+        final long expires;
+
+        Verified(byte[] digest, long expires) {
+            this.digest = digest;
+            this.expires = expires;
+        }
+
+        boolean expired(long now) {
+            return now >= expires;
+        }
+    }
+}
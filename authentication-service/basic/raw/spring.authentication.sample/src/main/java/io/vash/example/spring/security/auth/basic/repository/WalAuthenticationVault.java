@@ -0,0 +1,463 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Repository;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * In memory vault that survives restarts, selected with {@code vault.store=wal}. Matching never leaves memory.
+ *
+ * Registrations are appended to a write-ahead log under {@code vault.wal.directory} before their token is
+ * returned. A single writer thread takes whatever registrations are waiting, writes them at once and syncs the
+ * file, so concurrent registrations share one fsync. A login only enters the map once its record is durable;
+ * until then it is held as pending, and a concurrent registration of the same login waits for that outcome. Every
+ * {@code vault.wal.snapshot} ms the log is rotated and the whole map is written to a snapshot, after which older
+ * logs and snapshots are deleted.
+ *
+ * Startup maps the latest snapshot and replays the logs of its generation and later, up to the first record whose
+ * checksum does not hold. Log records are {@code length | key | digest | crc32}, snapshots
+ * {@code (length | key | digest)* | count | crc32}.
+ */
+@Slf4j
+@Primary
+@Repository
+@ConditionalOnProperty(name = "vault.store", havingValue = "wal")
+class WalAuthenticationVault extends ConcurrentAuthenticationVault implements PublicMetrics, DisposableBean {
+
+    static final String WAL = "wal-";
+    static final String SNAPSHOT = "snapshot-";
+
+    private static final int DIGEST = 32;
+
+    private final Path directory;
+    private final BlockingQueue<Pending> pending = new LinkedBlockingQueue<>();
+    private final ConcurrentMap<String, Pending> appending = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private final Thread writer;
+
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder appended = new LongAdder();
+
+    private long generation;
+    private FileChannel wal;
+    private volatile long snapshotEntries;
+    private volatile boolean running = true;
+    private volatile boolean writable = true;
+
+    @Autowired
+    WalAuthenticationVault(@Value("${vault.wal.directory:data/vault}") String directory) throws IOException {
+        this.directory = Files.createDirectories(Paths.get(directory));
+        recover();
+        this.writer = new Thread(this::writeLoop, "vault-wal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public Authentication register(final Principal principal) throws SecurityException {
+        final String token = UUID.randomUUID().toString();
+        await(append(principal, token));
+        return new UsernamePasswordAuthenticationToken(principal.getName(), token);
+    }
+
+    /**
+     * Appends all registrations before waiting for any, so they share as few commits as possible.
+     */
+    @Override
+    public io.vavr.collection.List<Try<Authentication>> registerAll(final List<? extends Principal> principals) {
+        final List<String> tokens = new ArrayList<>(principals.size());
+        final List<Try<Pending>> appends = new ArrayList<>(principals.size());
+        for (Principal principal : principals) {
+            final String token = UUID.randomUUID().toString();
+            tokens.add(token);
+            appends.add(Try.of(() -> append(principal, token)));
+        }
+        final List<Try<Authentication>> registered = new ArrayList<>(principals.size());
+        for (int i = 0; i < appends.size(); i++) {
+            final String token = tokens.get(i);
+            registered.add(appends.get(i)
+                    .andThenTry(this::await)
+                    .map(append -> new UsernamePasswordAuthenticationToken(append.key, token)));
+        }
+        return io.vavr.collection.List.ofAll(registered);
+    }
+
+    /**
+     * Holds the login as pending and queues its record. A login that is pending already is waited for: taken if
+     * that registration failed, a conflict if it became durable.
+     */
+    private Pending append(final Principal principal, final String token) {
+        Objects.requireNonNull(principal, "principal can not be null");
+        final String key = Objects.requireNonNull(principal.getName());
+        final byte[] digest = digest(token);
+        while (true) {
+            if (vault.containsKey(key)) throw collision(principal);
+            final Pending append = new Pending(key, digest, record(key, digest));
+            final Pending racing = appending.putIfAbsent(key, append);
+            if (racing == null) {
+                if (vault.containsKey(key)) { //Committed between the two looks
+                    appending.remove(key, append);
+                    throw collision(principal);
+                }
+                if (running && writable) pending.add(append);
+                else fail(append, new IllegalStateException(running ? "Vault log is unusable" : "Vault is closed"));
+                return append;
+            }
+            try {
+                racing.durable.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while " + key + " was being registered", e);
+            } catch (ExecutionException e) {
+                log.debug("Concurrent registration of {} failed, retrying", key);
+            }
+        }
+    }
+
+    private void await(final Pending append) {
+        try {
+            append.durable.get();
+        } catch (InterruptedException | ExecutionException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            throw new IllegalStateException("Registration of " + append.key + " could not be persisted", e);
+        }
+        appended.increment();
+    }
+
+    private void fail(final Pending append, final Throwable cause) {
+        appending.remove(append.key, append); //Nobody has seen the token yet
+        append.durable.completeExceptionally(cause);
+    }
+
+    /**
+     * Rotates the log, then writes the map to a snapshot of the new generation. Everything in the old logs is in
+     * the map at that point; registrations racing with the copy are in the new log, which replays on top of it.
+     */
+    @Scheduled(initialDelayString = "${vault.wal.snapshot:300000}", fixedDelayString = "${vault.wal.snapshot:300000}")
+    void snapshot() throws IOException {
+        final long started = System.currentTimeMillis();
+        final long snapshot;
+        synchronized (writeLock) {
+            snapshot = ++generation;
+            final FileChannel previous = wal;
+            wal = open(file(WAL, snapshot));
+            sync(directory);
+            previous.close();
+        }
+        final Path temporary = directory.resolve(SNAPSHOT + "tmp");
+        long count = 0;
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+            final CRC32 crc = new CRC32();
+            final DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), crc));
+            for (Map.Entry<String, byte[]> entry : vault.entrySet()) {
+                final byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(key.length);
+                out.write(key);
+                out.write(entry.getValue());
+                count++;
+            }
+            out.writeLong(count);
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            file.getChannel().force(true);
+        }
+        Files.move(temporary, file(SNAPSHOT, snapshot), StandardCopyOption.ATOMIC_MOVE);
+        sync(directory); //The rename must be durable before the logs it replaces go
+        delete(snapshot);
+        snapshotEntries = count;
+        log.info("Wrote snapshot {} of {} credentials in {} ms", snapshot, count, System.currentTimeMillis() - started);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException, IOException {
+        running = false;
+        writer.join();
+        for (Pending append; (append = pending.poll()) != null; ) {
+            fail(append, new IllegalStateException("Vault is closed"));
+        }
+        synchronized (writeLock) {
+            wal.close();
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("vault.wal.records", appended.sum()),
+                new Metric<>("vault.wal.commits", commits.sum()),
+                new Metric<>("vault.wal.pending", pending.size()),
+                new Metric<>("vault.snapshot.entries", snapshotEntries));
+    }
+
+    private void writeLoop() {
+        final List<Pending> batch = new ArrayList<>();
+        while (running || !pending.isEmpty()) {
+            try {
+                final Pending first = pending.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                pending.drainTo(batch);
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(final List<Pending> batch) {
+        int size = 0;
+        for (Pending append : batch) {
+            size += append.record.length;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (Pending append : batch) {
+            buffer.put(append.record);
+        }
+        buffer.flip();
+        try {
+            synchronized (writeLock) {
+                if (!writable) throw new IllegalStateException("Vault log is unusable");
+                final long start = wal.size();
+                try {
+                    while (buffer.hasRemaining()) {
+                        wal.write(buffer);
+                    }
+                    wal.force(false);
+                } catch (IOException | RuntimeException e) {
+                    discard(start);
+                    throw e;
+                }
+                for (Pending append : batch) { //Before a snapshot can rotate the log these records are in
+                    vault.put(append.key, append.digest);
+                }
+            }
+            commits.increment();
+            for (Pending append : batch) {
+                appending.remove(append.key, append);
+                append.durable.complete(null);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to commit {} registrations", batch.size(), e);
+            for (Pending append : batch) {
+                fail(append, e);
+            }
+        }
+    }
+
+    /**
+     * Cuts a failed batch off the log: later records must not follow torn bytes, which end the replay, nor a batch
+     * whose callers were told it failed. If the log can not be truncated, registrations move on to a new generation,
+     * and if that can not be opened either, they stop.
+     */
+    private void discard(final long start) {
+        try {
+            wal.truncate(start);
+            wal.force(false);
+            return;
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to truncate the log back to {} bytes", start, e);
+        }
+        final FileChannel previous = wal;
+        try {
+            wal = open(file(WAL, generation + 1));
+            generation++;
+            sync(directory);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to start log {}, refusing registrations", generation + 1, e);
+            writable = false;
+            return;
+        }
+        try {
+            previous.close();
+        } catch (IOException e) {
+            log.warn("Failed to close log {}", generation - 1, e);
+        }
+    }
+
+    private void recover() throws IOException {
+        final long started = System.currentTimeMillis();
+        Files.deleteIfExists(directory.resolve(SNAPSHOT + "tmp"));
+        final long snapshot = latest(SNAPSHOT);
+        final long loaded = snapshot < 0 ? 0 : load(file(SNAPSHOT, snapshot));
+        snapshotEntries = loaded;
+        generation = Math.max(0, Math.max(snapshot, latest(WAL)));
+        long replayed = 0;
+        for (long g = Math.max(0, snapshot); g <= generation; g++) {
+            if (Files.exists(file(WAL, g))) replayed += replay(file(WAL, g));
+        }
+        wal = open(file(WAL, generation));
+        sync(directory);
+        log.info("Loaded {} credentials from snapshot {} and {} from the log in {} ms",
+                loaded, snapshot, replayed, System.currentTimeMillis() - started);
+    }
+
+    private long load(final Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final MappedByteBuffer snapshot = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final int end = snapshot.capacity() - 4;
+            final CRC32 crc = new CRC32();
+            if (end >= 8) crc.update((ByteBuffer) snapshot.duplicate().limit(end));
+            if (end < 8 || snapshot.getInt(end) != (int) crc.getValue()) {
+                throw new IllegalStateException("Snapshot " + file + " is corrupt, refusing to start without its credentials");
+            }
+            final long count = snapshot.getLong(end - 8);
+            for (long i = 0; i < count; i++) {
+                final byte[] key = new byte[snapshot.getInt()];
+                snapshot.get(key);
+                final byte[] digest = new byte[DIGEST];
+                snapshot.get(digest);
+                vault.put(new String(key, StandardCharsets.UTF_8), digest);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Applies the intact prefix of a log and cuts off whatever follows it, a record torn by a crash.
+     */
+    private long replay(final Path file) throws IOException {
+        long count = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            final CRC32 crc = new CRC32();
+            int valid = 0;
+            while (records.remaining() >= 4) {
+                final int length = records.getInt(valid);
+                if (length < 0 || length > records.remaining() - 4 - DIGEST - 4) break;
+                final int end = valid + 4 + length + DIGEST;
+                crc.reset();
+                crc.update((ByteBuffer) records.duplicate().limit(end).position(valid));
+                if (records.getInt(end) != (int) crc.getValue()) break;
+                final byte[] key = new byte[length];
+                final byte[] digest = new byte[DIGEST];
+                records.position(valid + 4);
+                records.get(key).get(digest);
+                vault.put(new String(key, StandardCharsets.UTF_8), digest);
+                valid = end + 4;
+                records.position(valid);
+                count++;
+            }
+            if (valid < channel.size()) {
+                log.warn("Truncating {} torn bytes of {}", channel.size() - valid, file);
+                channel.truncate(valid);
+                channel.force(true);
+            }
+        }
+        return count;
+    }
+
+    private static byte[] record(final String login, final byte[] digest) {
+        final byte[] key = login.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer record = ByteBuffer.allocate(4 + key.length + DIGEST + 4);
+        record.putInt(key.length).put(key).put(digest);
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        return record.array();
+    }
+
+    FileChannel open(final Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Makes created and renamed files durable. Not every platform can open a directory, there it is up to the
+     * file system.
+     */
+    private static void sync(final Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Can not sync directory {}", directory, e);
+        }
+    }
+
+    private Path file(final String prefix, final long generation) {
+        return directory.resolve(String.format("%s%016d", prefix, generation));
+    }
+
+    private long latest(final String prefix) throws IOException {
+        long latest = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "[0-9]*")) {
+            for (Path file : files) {
+                latest = Math.max(latest, Long.parseLong(file.getFileName().toString().substring(prefix.length())));
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Drops the logs and snapshots the given snapshot replaces.
+     */
+    private void delete(final long snapshot) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                final String name = file.getFileName().toString();
+                final String prefix = name.startsWith(WAL) ? WAL : name.startsWith(SNAPSHOT) ? SNAPSHOT : null;
+                if (prefix == null || !name.substring(prefix.length()).matches("[0-9]+")) continue;
+                if (Long.parseLong(name.substring(prefix.length())) < snapshot) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static final class Pending {
+        final String key;
+        final byte[] digest;
+        final byte[] record;
+        final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        Pending(String key, byte[] digest, byte[] record) {
+            this.key = key;
+            this.digest = digest;
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package io.vash.example.spring.security.auth.basic.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Audit trail of the authentication hot path, one {@code event=... key=...} line per event on the {@code audit}
+ * logger, which {@code logback-spring.xml} hands to an asynchronous appender.
+ *
+ * Frequent events are sampled, one in {@code audit.sampling}. The level is checked before anything else, so turning
+ * the logger off at runtime leaves no cost behind:
+ *
+ * <pre>
+ *     {@code
+ *     > curl -X POST "$AUTH_ENDPOINT/loggers/audit" -H "$AUTH_CONTENT_JSON" -d '{"configuredLevel": "OFF"}'
+ *     }
+ * </pre>
+ */
+@Component
+public class Audit {
+
+    private static final Logger AUDIT = LoggerFactory.getLogger("audit");
+
+    private final int sampling;
+
+    public Audit(@Value("${audit.sampling:100}") int sampling) {
+        this.sampling = sampling;
+    }
+
+    public void event(final Event event, final String key) {
+        if (AUDIT.isInfoEnabled() && (!event.sampled || sampling <= 1 || ThreadLocalRandom.current().nextInt(sampling) == 0)) {
+            AUDIT.info("event={} key={}", event, key);
+        }
+    }
+
+    public enum Event {
+        UNKNOWN(false),
+        VERIFIED(true),
+        REJECTED(false),
+        REGISTERED(false),
+        CONFLICT(false),
+        JOURNALED(true),
+        FAILED(false);
+
+        final boolean sampled;
+
+        Event(boolean sampled) {
+            this.sampled = sampled;
+        }
+    }
+}
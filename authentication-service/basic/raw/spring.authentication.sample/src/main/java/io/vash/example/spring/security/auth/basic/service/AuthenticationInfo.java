@@ -7,4 +7,18 @@ import java.security.Principal;
 
 public interface AuthenticationInfo {
     List<AuthenticationLogEntry> successfulAttempts(final Principal principal, int limit);
+
+    /**
+     * Streams up to {@code limit} successful attempts strictly before the cursor {@code (before, seq)}, newest first
+     * by time then journal id, to the {@code visitor} while they are read, so pages of any size are never materialized.
+     */
+    void successfulAttempts(final Principal principal, long before, long seq, int limit, Visitor visitor);
+
+    /**
+     * Receives the time of an attempt and its id in the journal, which orders attempts of the same millisecond.
+     */
+    @FunctionalInterface
+    interface Visitor {
+        void visit(long utc, long seq);
+    }
 }
@@ -8,6 +8,8 @@ public interface AuthenticationJournal {
 
     AuthenticationLogEntry success(final Principal principal);
 
+    AuthenticationLogEntry failure(final Principal principal);
+
     @Value
     class AuthenticationLogEntry {
         Principal principal;
@@ -16,6 +18,7 @@ public interface AuthenticationJournal {
     }
 
     enum AuthenticationState {
-        SUCCESSFUL
+        SUCCESSFUL,
+        FAILED
     }
 }
\ No newline at end of file
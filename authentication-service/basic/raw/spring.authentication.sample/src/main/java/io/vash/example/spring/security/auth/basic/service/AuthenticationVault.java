@@ -1,5 +1,7 @@
 package io.vash.example.spring.security.auth.basic.service;
 
+import io.vavr.collection.List;
+import io.vavr.control.Try;
 import lombok.EqualsAndHashCode;
 import lombok.Value;
 import org.springframework.security.core.Authentication;
@@ -12,6 +14,14 @@ public interface AuthenticationVault {
 
     Authentication match(Authentication identifier) throws IdentifierMismatch;
 
+    /**
+     * Registers each principal as {@link #register} would, answering in the same order. A principal that appears
+     * twice is a conflict the second time. Vaults that can register many at a lower cost than one by one override it.
+     */
+    default List<Try<Authentication>> registerAll(java.util.List<? extends Principal> identifiers) {
+        return List.ofAll(identifiers).map(identifier -> Try.of(() -> register(identifier)));
+    }
+
     default SecurityException collision(Principal principal) {
         return new IdentifierConflict(principal);
     }
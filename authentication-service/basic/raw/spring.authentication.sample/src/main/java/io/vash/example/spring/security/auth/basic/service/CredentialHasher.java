@@ -0,0 +1,69 @@
+package io.vash.example.spring.security.auth.basic.service;
+
+import lombok.EqualsAndHashCode;
+import lombok.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Hashing scheme for stored credentials, registered under the {@link #id()} it prefixes its hashes with.
+ */
+public interface CredentialHasher {
+
+    String id();
+
+    String hash(String credential);
+
+    boolean verify(String credential, String hash);
+
+    /**
+     * The hasher can not take more work right now, the caller may retry after {@code retryAfter} seconds.
+     */
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    final class Overloaded extends SecurityException {
+        long retryAfter;
+    }
+
+    /**
+     * Stores hashes as {@code {id}hash} and verifies each with the hasher it names. Hashes without a prefix
+     * ({@code $2a$...}) predate the prefixes and are verified as {@code bcrypt}.
+     */
+    final class Delegating implements PasswordEncoder {
+
+        static final String LEGACY = "bcrypt";
+
+        private final Map<String, CredentialHasher> hashers;
+        private final CredentialHasher current;
+
+        public Delegating(final Collection<? extends CredentialHasher> hashers, final String current) {
+            this.hashers = hashers.stream().collect(Collectors.toMap(CredentialHasher::id, Function.identity()));
+            this.current = Objects.requireNonNull(this.hashers.get(current), () -> "No credential hasher " + current);
+        }
+
+        @Override
+        public String encode(final CharSequence credential) {
+            return '{' + current.id() + '}' + current.hash(credential.toString());
+        }
+
+        @Override
+        public boolean matches(final CharSequence credential, final String encoded) {
+            if (encoded == null) return false;
+            final int end = encoded.startsWith("{") ? encoded.indexOf('}') : -1;
+            final CredentialHasher hasher = hashers.get(end > 0 ? encoded.substring(1, end) : LEGACY);
+            return hasher != null && hasher.verify(credential.toString(), encoded.substring(end + 1));
+        }
+
+        /**
+         * Whether a hash verified with {@link #matches} should be replaced by {@link #encode} of the same credential.
+         */
+        public boolean upgradeEncoding(final String encoded) {
+            return encoded != null && !encoded.startsWith('{' + current.id() + '}');
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package io.vash.example.spring.security.auth.basic.service;
+
+/**
+ * 64 bit string hash shared by the in memory filters and the mapped journal: FNV-1a over the chars, then the
+ * murmur3 finalizer to spread it over all 64 bits. {@link #hash(String)} is persisted by the journal, so it must
+ * never change.
+ */
+public final class Hashes {
+
+    public static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    private Hashes() {
+    }
+
+    public static long hash(final String key) {
+        return hash(key, FNV_OFFSET);
+    }
+
+    /**
+     * Starts from {@code seed} instead of the FNV offset basis, a random seed keeps collisions from being aimed.
+     */
+    public static long hash(final String key, final long seed) {
+        long h = seed;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,139 @@
+package io.vash.example.spring.security.auth.basic.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Named latency histograms, read by the {@code latency} actuator endpoint.
+ *
+ * Buckets are log-linear over microseconds: exact below 32 µs, then 32 buckets per power of two, so any value is
+ * reported at most 1/32 (3%) above what was recorded, up to 2^26 µs (67 s) where they saturate. Like the cells of
+ * a {@link java.util.concurrent.atomic.LongAdder}, threads record into one of a fixed number of bucket arrays
+ * picked by thread id, with atomic adds that rarely contend: memory stays bounded however many threads come and
+ * go, and nothing is allocated once a stripe exists. Reads add up the stripes. Counts are kept since startup.
+ */
+@Component
+public class Latencies {
+
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * The histogram of that name, created on first use. Look it up once, not on every record.
+     */
+    public Histogram histogram(final String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    public Map<String, Object> summary() {
+        final Map<String, Object> summary = new TreeMap<>();
+        histograms.forEach((name, histogram) -> summary.put(name, histogram.summary()));
+        return summary;
+    }
+
+    public static final class Histogram {
+
+        static final int SUB_BITS = 5;
+        static final int SUB = 1 << SUB_BITS;
+        static final long MAX = (1L << 26) - 1;
+        static final int BUCKETS = bucket(MAX) + 1;
+
+        private static final int SUM = BUCKETS;
+        private static final int HIGHEST = BUCKETS + 1;
+        private static final int STRIPES = Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
+
+        private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+
+        Histogram() {
+        }
+
+        public void record(final long nanos) {
+            final long micros = Math.min(MAX, Math.max(0, nanos / 1000));
+            final AtomicLongArray counts = stripe();
+            counts.incrementAndGet(bucket(micros));
+            counts.addAndGet(SUM, micros);
+            long highest;
+            while (micros > (highest = counts.get(HIGHEST)) && !counts.compareAndSet(HIGHEST, highest, micros)) {
+                //retry
+            }
+        }
+
+        /**
+         * Records the time elapsed since {@code started}, a {@link System#nanoTime()}.
+         */
+        public void since(final long started) {
+            record(System.nanoTime() - started);
+        }
+
+        Map<String, Object> summary() {
+            final long[] counts = new long[BUCKETS];
+            long sum = 0;
+            long highest = 0;
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                final AtomicLongArray cell = stripes.get(stripe);
+                if (cell == null) continue;
+                for (int i = 0; i < BUCKETS; i++) {
+                    counts[i] += cell.get(i);
+                }
+                sum += cell.get(SUM);
+                highest = Math.max(highest, cell.get(HIGHEST));
+            }
+            long count = 0;
+            for (long bucket : counts) {
+                count += bucket;
+            }
+            final Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", count);
+            summary.put("mean", count == 0 ? 0 : sum / count);
+            summary.put("p50", percentile(counts, count, 0.5, highest));
+            summary.put("p99", percentile(counts, count, 0.99, highest));
+            summary.put("p999", percentile(counts, count, 0.999, highest));
+            summary.put("max", highest);
+            return summary;
+        }
+
+        /**
+         * The stripe of the current thread, created on first use. Thread ids are sequential, so consecutive threads
+         * of a pool land on different stripes.
+         */
+        private AtomicLongArray stripe() {
+            final int index = (int) Thread.currentThread().getId() & (STRIPES - 1);
+            final AtomicLongArray stripe = stripes.get(index);
+            if (stripe != null) return stripe;
+            stripes.compareAndSet(index, null, new AtomicLongArray(BUCKETS + 2));
+            return stripes.get(index);
+        }
+
+        /**
+         * Highest value of the bucket the rank falls in, which is never lower than the value recorded.
+         */
+        private static long percentile(final long[] counts, final long count, final double quantile, final long highest) {
+            if (count == 0) return 0;
+            final long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(highest, highest(i));
+            }
+            return highest;
+        }
+
+        static int bucket(final long micros) {
+            if (micros < SUB) return (int) micros;
+            final int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS;
+            return (shift + 1) * SUB + (int) ((micros >>> shift) & (SUB - 1));
+        }
+
+        static long highest(final int bucket) {
+            if (bucket < SUB) return bucket;
+            final int shift = bucket / SUB - 1;
+            return ((long) (SUB + bucket % SUB) << shift) + (1L << shift) - 1;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package io.vash.example.spring.security.auth.basic;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class FailureThrottleTest {
+
+    private static final int LIMIT = 10;
+
+    private final FailureThrottle throttle = new FailureThrottle(true, 60000, LIMIT, 100, 1024);
+
+    @Test
+    public void distinctKeyNoiseDoesNotBlockCleanLogins() {
+        for (int i = 0; i < 8 * 1024; i++) {
+            throttle.failure(attempt("noise-" + i, "10.1." + (i >> 8) + "." + (i & 0xFF)));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertThat(throttle.permits(attempt("clean-" + i, "10.2." + (i >> 8) + "." + (i & 0xFF)))).isTrue();
+        }
+    }
+
+    @Test
+    public void guessingALoginFromManyAddressesLocksTheLogin() {
+        for (int i = 0; i < LIMIT; i++) {
+            throttle.failure(attempt("bob", "10.0.0." + i));
+        }
+        assertThat(throttle.permits(attempt("bob", "10.0.1.1"))).isFalse();
+        assertThat(throttle.permits(attempt("alice", "10.0.1.1"))).isTrue();
+    }
+
+    @Test
+    public void anAddressSprayingLoginsIsThrottled() {
+        for (int i = 0; i < 100; i++) {
+            throttle.failure(attempt("user-" + i, "10.0.0.1"));
+        }
+        assertThat(throttle.permits(attempt("alice", "10.0.0.1"))).isFalse();
+        assertThat(throttle.permits(attempt("alice", "10.0.0.2"))).isTrue();
+    }
+
+    private static Authentication attempt(String login, String address) {
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(address);
+        final UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(login, "wrong");
+        authentication.setDetails(new WebAuthenticationDetails(request));
+        return authentication;
+    }
+}
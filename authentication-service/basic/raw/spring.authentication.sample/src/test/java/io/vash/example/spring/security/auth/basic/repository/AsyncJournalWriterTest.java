@@ -0,0 +1,87 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import io.vash.example.spring.security.auth.basic.repository.JpaJournal.AsyncSuccessAuthenticationJournalWriter;
+import io.vash.example.spring.security.auth.basic.repository.JpaJournal.AsyncSuccessAuthenticationJournalWriter.Backpressure;
+import io.vash.example.spring.security.auth.basic.service.Audit;
+import io.vash.example.spring.security.auth.basic.service.Latencies;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.security.Principal;
+import java.util.Collection;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class AsyncJournalWriterTest {
+
+    private final Principal alice = () -> "alice";
+
+    private EmbeddedDatabase database;
+
+    @Before
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .generateUniqueName(true)
+                .build();
+        final JdbcTemplate jdbc = new JdbcTemplate(database);
+        jdbc.execute("create table success_auth_log (seq bigint not null primary key, key varchar(255), utc bigint not null)");
+        jdbc.execute("create table failed_auth_log (seq bigint not null primary key, key varchar(255), utc bigint not null)");
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void batchThatFailedHalfWayIsWrittenOnceEntryByEntry() throws Exception {
+        final JdbcTemplate jdbc = new JdbcTemplate(database) {
+            @Override
+            public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize, ParameterizedPreparedStatementSetter<T> setter) {
+                super.batchUpdate(sql, batchArgs, batchSize, setter);
+                throw new TransientDataAccessResourceException("Connection reset after the batch");
+            }
+        };
+        final AsyncSuccessAuthenticationJournalWriter writer = open(jdbc);
+        for (int i = 0; i < 10; i++) {
+            writer.success(alice);
+            writer.failure(alice);
+        }
+        writer.destroy();
+
+        assertThat(count("success_auth_log")).isEqualTo(10);
+        assertThat(count("failed_auth_log")).isEqualTo(10);
+    }
+
+    @Test
+    public void entriesJournaledDuringShutdownAreWritten() throws Exception {
+        final AsyncSuccessAuthenticationJournalWriter writer = open(new JdbcTemplate(database));
+        final Thread journaling = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                writer.success(alice);
+            }
+        });
+        journaling.start();
+        writer.destroy();
+        journaling.join();
+
+        assertThat(count("success_auth_log")).isEqualTo(1000);
+    }
+
+    private AsyncSuccessAuthenticationJournalWriter open(JdbcTemplate jdbc) {
+        return new AsyncSuccessAuthenticationJournalWriter(jdbc, new RecentAuthentications(16, 100), new Audit(1),
+                new Latencies(), 16, 4, 5, Backpressure.BLOCK);
+    }
+
+    private int count(String table) {
+        return new JdbcTemplate(database).queryForObject("select count(*) from " + table, Integer.class);
+    }
+}
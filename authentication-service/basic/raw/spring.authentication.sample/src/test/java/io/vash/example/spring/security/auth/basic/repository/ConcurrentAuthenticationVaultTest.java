@@ -0,0 +1,78 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import io.vash.example.spring.security.auth.basic.service.AuthenticationVault.IdentifierConflict;
+import io.vash.example.spring.security.auth.basic.service.AuthenticationVault.IdentifierMismatch;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class ConcurrentAuthenticationVaultTest {
+
+    private static final int THREADS = 8;
+    private static final int LOGINS = 2_000;
+
+    private final ConcurrentAuthenticationVault vault = new ConcurrentAuthenticationVault();
+
+    @Test
+    public void everyLoginIsRegisteredExactlyOnceUnderContention() throws Exception {
+        final Map<String, Object> tokens = new ConcurrentHashMap<>();
+        final AtomicInteger duplicates = new AtomicInteger();
+        final AtomicInteger conflicts = new AtomicInteger();
+        final AtomicInteger matched = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        final List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            workers.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < LOGINS; i++) {
+                    final String login = "u" + i;
+                    try {
+                        final Authentication registered = vault.register(() -> login);
+                        if (tokens.putIfAbsent(login, registered.getCredentials()) != null) duplicates.incrementAndGet();
+                    } catch (IdentifierConflict e) {
+                        conflicts.incrementAndGet();
+                    }
+                    final Object token = tokens.get(login);
+                    if (token != null) {
+                        vault.match(new UsernamePasswordAuthenticationToken(login, token));
+                        matched.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) worker.get();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(duplicates.get()).isEqualTo(0);
+        assertThat(tokens).hasSize(LOGINS);
+        assertThat(conflicts.get()).isEqualTo(LOGINS * (THREADS - 1));
+        assertThat(matched.get()).isAtLeast(LOGINS);
+        for (Map.Entry<String, Object> token : tokens.entrySet()) {
+            assertThat(vault.match(new UsernamePasswordAuthenticationToken(token.getKey(), token.getValue())).isAuthenticated()).isTrue();
+        }
+    }
+
+    @Test(expected = IdentifierMismatch.class)
+    public void rejectsWrongToken() {
+        vault.register(() -> "alice");
+        vault.match(new UsernamePasswordAuthenticationToken("alice", "not-the-token"));
+    }
+}
@@ -0,0 +1,60 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import io.vash.example.spring.security.auth.basic.repository.JpaJournal.SuccessAuthenticationJournalReader;
+import io.vash.example.spring.security.auth.basic.service.Latencies;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class JournalReaderTest {
+
+    private final Principal alice = () -> "alice";
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+
+    @Before
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .generateUniqueName(true)
+                .build();
+        jdbc = new JdbcTemplate(database);
+        jdbc.execute("create table success_auth_log (seq bigint not null primary key, key varchar(255), utc bigint not null)");
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void pagesSplittingOneMillisecondNeitherSkipNorRepeatEntries() {
+        for (long seq = 1; seq <= 5; seq++) {
+            jdbc.update("insert into success_auth_log (seq, key, utc) values (?, ?, ?)", seq, "alice", seq < 5 ? 100 : 200);
+        }
+        final SuccessAuthenticationJournalReader reader = new SuccessAuthenticationJournalReader(jdbc, new RecentAuthentications(4, 100), new Latencies());
+
+        final List<Long> seqs = new ArrayList<>();
+        final long[] cursor = {Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int page = 0; page < 3; page++) {
+            reader.successfulAttempts(alice, cursor[0], cursor[1], 2, (utc, seq) -> {
+                seqs.add(seq);
+                cursor[0] = utc;
+                cursor[1] = seq;
+            });
+        }
+
+        assertThat(seqs).containsExactly(5L, 4L, 3L, 2L, 1L).inOrder();
+    }
+}
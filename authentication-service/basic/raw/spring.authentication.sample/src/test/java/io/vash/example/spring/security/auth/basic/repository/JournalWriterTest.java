@@ -0,0 +1,66 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import io.vash.example.spring.security.auth.basic.repository.JpaJournal.SuccessAuthenticationJournalWriter;
+import io.vash.example.spring.security.auth.basic.service.Audit;
+import io.vash.example.spring.security.auth.basic.service.Latencies;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.security.Principal;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class JournalWriterTest {
+
+    private final Principal alice = () -> "alice";
+
+    private EmbeddedDatabase database;
+
+    @Before
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .generateUniqueName(true)
+                .build();
+        new JdbcTemplate(database).execute("create table failed_auth_log (seq bigint not null primary key, key varchar(255), utc bigint not null)");
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void failedAttemptsAreInsertedInBatchesOffTheRequest() throws Exception {
+        final AtomicInteger batches = new AtomicInteger();
+        final JdbcTemplate jdbc = new JdbcTemplate(database) {
+            @Override
+            public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize, ParameterizedPreparedStatementSetter<T> setter) {
+                batches.incrementAndGet();
+                return super.batchUpdate(sql, batchArgs, batchSize, setter);
+            }
+        };
+        final SuccessAuthenticationJournalWriter writer = new SuccessAuthenticationJournalWriter(null, jdbc,
+                new RecentAuthentications(4, 100), new Audit(1), new Latencies(), 16, 4);
+        for (int i = 0; i < 40; i++) {
+            writer.failure(alice);
+        }
+        assertThat(count()).isEqualTo(32); //The requests that found the buffer full wrote 4 at a time
+        writer.destroy();
+
+        assertThat(count()).isEqualTo(40);
+        assertThat(batches.get()).isEqualTo(10);
+    }
+
+    private int count() {
+        return new JdbcTemplate(database).queryForObject("select count(*) from failed_auth_log", Integer.class);
+    }
+}
@@ -0,0 +1,159 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import io.vash.example.spring.security.auth.basic.repository.CredentialHashers.BCryptCredentialHasher;
+import io.vash.example.spring.security.auth.basic.repository.CredentialHashers.HmacCredentialHasher;
+import io.vash.example.spring.security.auth.basic.repository.JpaVault.JpaBasicAuthenticationVault;
+import io.vash.example.spring.security.auth.basic.service.Audit;
+import io.vash.example.spring.security.auth.basic.service.AuthenticationVault.IdentifierConflict;
+import io.vash.example.spring.security.auth.basic.service.AuthenticationVault.IdentifierMismatch;
+import io.vash.example.spring.security.auth.basic.service.CredentialHasher;
+import io.vash.example.spring.security.auth.basic.service.Latencies;
+import io.vavr.control.Try;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class JpaBasicAuthenticationVaultTest {
+
+    private static final int THREADS = 16;
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+    private JpaVault credentials;
+    private HashingExecutor hashing;
+    private RegisteredKeys keys;
+    private CredentialHasher.Delegating encoder;
+    private JpaBasicAuthenticationVault vault;
+
+    @Before
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .generateUniqueName(true)
+                .build();
+        jdbc = new JdbcTemplate(database);
+        jdbc.execute("create table credentials (key varchar(255) not null, token varchar(255), primary key (key))");
+        credentials = Mockito.mock(JpaVault.class);
+        keys = new RegisteredKeys(jdbc, true, 1000, 0.01);
+        keys.rebuild();
+        hashing = new HashingExecutor(2, THREADS, 1);
+        encoder = new CredentialHasher.Delegating(Arrays.asList(new BCryptCredentialHasher(4, hashing), new HmacCredentialHasher("")), "hmac");
+        vault = new JpaBasicAuthenticationVault(credentials, jdbc, new DataSourceTransactionManager(database), encoder,
+                new VerifiedCredentialCache(16, 1000), keys, new Audit(1), new Latencies());
+    }
+
+    @After
+    public void tearDown() {
+        hashing.destroy();
+        database.shutdown();
+    }
+
+    @Test
+    public void exactlyOneConcurrentRegistrationWins() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            final String login = "user" + round;
+            final AtomicInteger wins = new AtomicInteger();
+            final AtomicInteger conflicts = new AtomicInteger();
+            final CountDownLatch start = new CountDownLatch(1);
+
+            final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+            final List<Future<?>> attempts = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                attempts.add(pool.submit(() -> {
+                    start.await();
+                    try {
+                        vault.register(() -> login);
+                        wins.incrementAndGet();
+                    } catch (IdentifierConflict e) {
+                        conflicts.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> attempt : attempts) attempt.get();
+            pool.shutdown();
+
+            assertThat(wins.get()).isEqualTo(1);
+            assertThat(conflicts.get()).isEqualTo(THREADS - 1);
+            assertThat(jdbc.queryForObject("select count(*) from credentials where key = ?", Integer.class, login)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void legacyBCryptHashIsMigratedOnLogin() {
+        final String legacy = new BCryptPasswordEncoder(4).encode("secret");
+        jdbc.update("insert into credentials (key, token) values (?, ?)", "legacy", legacy);
+        keys.rebuild();
+        Mockito.when(credentials.findOne("legacy")).thenAnswer(invocation -> new JpaVault.CredentialsData("legacy",
+                jdbc.queryForObject("select token from credentials where key = ?", String.class, "legacy")));
+        final Authentication login = new UsernamePasswordAuthenticationToken("legacy", "secret");
+
+        assertThat(vault.match(login).getName()).isEqualTo("legacy");
+        final String migrated = jdbc.queryForObject("select token from credentials where key = ?", String.class, "legacy");
+        assertThat(migrated).startsWith("{hmac}");
+
+        final JpaBasicAuthenticationVault uncached = new JpaBasicAuthenticationVault(credentials, jdbc, new DataSourceTransactionManager(database), encoder,
+                new VerifiedCredentialCache(16, 1000), keys, new Audit(1), new Latencies());
+        assertThat(uncached.match(login).getName()).isEqualTo("legacy");
+        assertThat(jdbc.queryForObject("select token from credentials where key = ?", String.class, "legacy")).isEqualTo(migrated);
+    }
+
+    @Test
+    public void batchReportsEachConflictAndRegistersTheRest() {
+        vault.register(() -> "taken");
+        jdbc.update(JpaBasicAuthenticationVault.INSERT, "unseen", "{hmac}x"); //Behind the filter's back, like a racing node
+
+        final List<String> logins = Arrays.asList("a", "taken", "b", "a", "unseen", "c");
+        final io.vavr.collection.List<Try<Authentication>> results = vault.registerAll(
+                logins.stream().map(login -> (Principal) () -> login).collect(Collectors.toList()));
+
+        assertThat(results.map(Try::isSuccess)).containsExactly(true, false, true, false, false, true).inOrder();
+        assertThat(results.get(1).getCause()).isInstanceOf(IdentifierConflict.class);
+        assertThat(results.get(4).getCause()).isInstanceOf(IdentifierConflict.class);
+        for (Authentication registered : results.filter(Try::isSuccess).map(Try::get)) {
+            Mockito.when(credentials.findOne(registered.getName())).thenAnswer(invocation -> new JpaVault.CredentialsData(registered.getName(),
+                    jdbc.queryForObject("select token from credentials where key = ?", String.class, registered.getName())));
+            assertThat(vault.match(registered).getName()).isEqualTo(registered.getName());
+        }
+        assertThat(jdbc.queryForObject("select count(*) from credentials", Integer.class)).isEqualTo(5);
+    }
+
+    @Test
+    public void unknownLoginIsRejectedWithoutQuery() {
+        vault.register(() -> "known");
+        Mockito.when(credentials.findOne("known")).thenAnswer(invocation -> new JpaVault.CredentialsData("known",
+                jdbc.queryForObject("select token from credentials where key = ?", String.class, "known")));
+
+        try {
+            vault.match(new UsernamePasswordAuthenticationToken("nobody", "secret"));
+            throw new AssertionError("Unknown login matched");
+        } catch (IdentifierMismatch expected) {
+            Mockito.verify(credentials, Mockito.never()).findOne("nobody");
+        }
+        vault.match(new UsernamePasswordAuthenticationToken("known", "secret"));
+        Mockito.verify(credentials).findOne("known");
+    }
+}
@@ -0,0 +1,91 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import io.vash.example.spring.security.auth.basic.service.Audit;
+import io.vash.example.spring.security.auth.basic.service.AuthenticationJournal.AuthenticationLogEntry;
+import io.vash.example.spring.security.auth.basic.service.Latencies;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.Principal;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class MappedJournalTest {
+
+    private static final int SEGMENT = 4 * MappedJournal.RECORD;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Principal alice = () -> "alice";
+    private final Principal bob = () -> "bob";
+
+    @Test
+    public void newestEntriesFollowTheChainAcrossSegmentsAndRestarts() throws Exception {
+        MappedJournal journal = open();
+        final long[] written = new long[5];
+        for (int i = 0; i < written.length; i++) {
+            written[i] = journal.success(alice).getUtc();
+            journal.success(bob);
+            journal.failure(alice);
+        }
+        journal.destroy();
+
+        journal = open();
+        assertThat(journal.successfulAttempts(alice, 3).map(AuthenticationLogEntry::getUtc))
+                .containsExactly(written[4], written[3], written[2]).inOrder();
+        assertThat(journal.successfulAttempts(alice, 10)).hasSize(5);
+        assertThat(journal.successfulAttempts(() -> "carol", 10)).isEmpty();
+        assertThat(folder.getRoot().list()).hasLength(4); //15 records of 4 per segment
+    }
+
+    @Test
+    public void tornRecordEndsTheJournalAndIsOverwritten() throws Exception {
+        MappedJournal journal = open();
+        journal.success(alice);
+        journal.success(alice);
+        journal.success(alice);
+        journal.destroy();
+
+        try (RandomAccessFile segment = new RandomAccessFile(folder.getRoot().toPath().resolve("00000000" + MappedJournal.SUFFIX).toFile(), "rw")) {
+            segment.seek(MappedJournal.RECORD + 8);
+            segment.writeLong(0); //The second record only half reached the disk
+        }
+
+        journal = open();
+        assertThat(journal.successfulAttempts(alice, 10)).hasSize(1);
+        final long utc = journal.success(alice).getUtc();
+        assertThat(journal.successfulAttempts(alice, 10).map(AuthenticationLogEntry::getUtc).head()).isEqualTo(utc);
+        assertThat(journal.successfulAttempts(alice, 10)).hasSize(2);
+        journal.destroy();
+
+        assertThat(open().successfulAttempts(alice, 10)).hasSize(2);
+    }
+
+    @Test
+    public void recordsPastAZeroedOneDoNotComeBack() throws Exception {
+        MappedJournal journal = open();
+        journal.success(alice);
+        journal.success(alice);
+        journal.success(alice);
+        journal.destroy();
+
+        try (RandomAccessFile segment = new RandomAccessFile(folder.getRoot().toPath().resolve("00000000" + MappedJournal.SUFFIX).toFile(), "rw")) {
+            segment.seek(MappedJournal.RECORD);
+            segment.write(new byte[MappedJournal.RECORD]); //The second record never reached the disk, the third did
+        }
+
+        journal = open();
+        journal.success(alice);
+        journal.destroy();
+
+        assertThat(open().successfulAttempts(alice, 10)).hasSize(2);
+    }
+
+    private MappedJournal open() throws IOException {
+        return new MappedJournal(folder.getRoot().getPath(), SEGMENT, new Audit(1), new Latencies());
+    }
+}
@@ -0,0 +1,43 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class RecentAuthenticationsTest {
+
+    private final RecentAuthentications recent = new RecentAuthentications(4, 100);
+
+    @Test
+    public void rowSavedBeforeTheWarmIsNotRecordedTwice() {
+        final long stamp = recent.stamp("alice"); //The writer saved 2 but did not record it yet
+        recent.warm("alice", stamp, new long[]{2, 1}, new long[]{20, 10}, 2);
+        recent.record("alice", 2, 20);
+        recent.record("alice", 3, 30);
+
+        assertThat(recent.newest("alice", 4)).asList().containsExactly(3L, 2L, 1L).inOrder();
+    }
+
+    @Test
+    public void rowsRecordedOutOfOrderOrInTheSameMillisecondAreAllKept() {
+        final long stamp = recent.stamp("alice");
+        recent.warm("alice", stamp, new long[]{5}, new long[]{50}, 1);
+        recent.record("alice", 7, 71);
+        recent.record("alice", 6, 60); //A slower writer, or a batch that was retried
+        recent.record("alice", 7, 70);
+        recent.record("alice", 6, 60);
+
+        assertThat(recent.newest("alice", 4)).asList().containsExactly(7L, 7L, 6L, 5L).inOrder();
+        recent.record("alice", 1, 10); //Older than every cached row of a full cache
+        assertThat(recent.newest("alice", 4)).asList().containsExactly(7L, 7L, 6L, 5L).inOrder();
+    }
+
+    @Test
+    public void warmRacingARecordIsDiscarded() {
+        final long stamp = recent.stamp("alice");
+        recent.record("alice", 2, 20);
+        recent.warm("alice", stamp, new long[]{1}, new long[]{10}, 1);
+
+        assertThat(recent.newest("alice", 4)).isNull();
+    }
+}
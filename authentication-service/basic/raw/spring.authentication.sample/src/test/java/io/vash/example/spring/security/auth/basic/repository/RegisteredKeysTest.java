@@ -0,0 +1,106 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class RegisteredKeysTest {
+
+    private static final int THREADS = 4;
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbc;
+
+    @Before
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.HSQL)
+                .generateUniqueName(true)
+                .build();
+        jdbc = new JdbcTemplate(database);
+        jdbc.execute("create table credentials (key varchar(255) not null, token varchar(255), primary key (key))");
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void keyRegisteredAfterTheRebuildScannedIsInTheNewFilter() {
+        final List<RegisteredKeys> keys = new ArrayList<>();
+        final JdbcTemplate scanning = new JdbcTemplate(database) {
+            @Override
+            public void query(String sql, RowCallbackHandler handler) {
+                super.query(sql, handler);
+                register(keys.get(0), "late");
+            }
+        };
+        keys.add(new RegisteredKeys(scanning, true, 1000, 0.01));
+        register(keys.get(0), "early");
+
+        keys.get(0).rebuild();
+
+        assertThat(keys.get(0).mightContain("early")).isTrue();
+        assertThat(keys.get(0).mightContain("late")).isTrue();
+        assertThat(keys.get(0).mightContain("never")).isFalse();
+    }
+
+    @Test
+    public void keysRegisteredDuringRebuildsAreNeverRejected() throws Exception {
+        final RegisteredKeys keys = new RegisteredKeys(jdbc, true, 1000, 0.01);
+        keys.rebuild();
+        final ExecutorService pool = Executors.newFixedThreadPool(THREADS + 1);
+        final AtomicBoolean registering = new AtomicBoolean(true);
+        final Future<?> rebuilds = pool.submit(() -> {
+            while (registering.get()) {
+                keys.rebuild();
+            }
+        });
+        final List<Future<?>> registrations = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            registrations.add(pool.submit(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    register(keys, thread + "-" + i);
+                }
+            }));
+        }
+        for (Future<?> registration : registrations) {
+            registration.get();
+        }
+        registering.set(false);
+        rebuilds.get();
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < 2000; i++) {
+                assertThat(keys.mightContain(t + "-" + i)).isTrue();
+            }
+        }
+    }
+
+    /**
+     * What the vault does: the insert commits, then the key is added.
+     */
+    private void register(RegisteredKeys keys, String key) {
+        jdbc.update("insert into credentials (key, token) values (?, ?)", key, "token");
+        keys.add(key);
+    }
+}
@@ -0,0 +1,251 @@
+package io.vash.example.spring.security.auth.basic.repository;
+
+import io.vash.example.spring.security.auth.basic.service.AuthenticationVault.IdentifierConflict;
+import io.vavr.control.Try;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.security.core.Authentication;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class WalAuthenticationVaultTest {
+
+    private static final int THREADS = 8;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void registrationsSurviveRestartFromSnapshotAndLog() throws Exception {
+        final WalAuthenticationVault writing = open();
+        final List<Authentication> registered = new ArrayList<>();
+        final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<Authentication>> registrations = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final String login = "u" + i;
+                registrations.add(pool.submit(() -> writing.register(() -> login)));
+                if (i == 100) writing.snapshot();
+            }
+            for (Future<Authentication> registration : registrations) {
+                registered.add(registration.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        writing.destroy();
+
+        final WalAuthenticationVault vault = open();
+        for (Authentication authentication : registered) {
+            assertThat(vault.match(authentication).getName()).isEqualTo(authentication.getName());
+        }
+        assertThat(vault.vault).hasSize(registered.size());
+        vault.destroy();
+    }
+
+    @Test
+    public void tornLogRecordIsDiscarded() throws Exception {
+        WalAuthenticationVault vault = open();
+        final Authentication first = vault.register(() -> "first");
+        vault.destroy();
+
+        final Path log = folder.getRoot().toPath().resolve(String.format("%s%016d", WalAuthenticationVault.WAL, 0));
+        Files.write(log, new byte[]{0, 0, 0, 6, 's', 'e'}, StandardOpenOption.APPEND);
+
+        vault = open();
+        assertThat(vault.vault.keySet()).containsExactly("first");
+        vault.register(() -> "second");
+        vault.destroy();
+
+        vault = open();
+        assertThat(vault.vault.keySet()).containsExactly("first", "second");
+        assertThat(vault.match(first).getName()).isEqualTo("first");
+        vault.destroy();
+    }
+
+    @Test
+    public void concurrentRegistrationsOfOneLoginConflictOnlyWithTheDurableOne() throws Exception {
+        final WalAuthenticationVault vault = open();
+        final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        final List<Future<Try<Authentication>>> registrations = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                registrations.add(pool.submit(() -> Try.of(() -> vault.register(() -> "same"))));
+            }
+            final List<Authentication> registered = new ArrayList<>();
+            for (Future<Try<Authentication>> registration : registrations) {
+                final Try<Authentication> outcome = registration.get();
+                if (outcome.isSuccess()) registered.add(outcome.get());
+                else assertThat(outcome.getCause()).isInstanceOf(IdentifierConflict.class);
+            }
+            assertThat(registered).hasSize(1);
+            assertThat(vault.match(registered.get(0)).getName()).isEqualTo("same");
+        } finally {
+            pool.shutdown();
+            vault.destroy();
+        }
+    }
+
+    @Test
+    public void registrationThatCouldNotBePersistedLeavesNothingBehind() throws Exception {
+        final WalAuthenticationVault closing = open();
+        closing.destroy();
+        final Try<Authentication> closed = Try.of(() -> closing.register(() -> "late"));
+        assertThat(closed.getCause()).isInstanceOf(IllegalStateException.class);
+        assertThat(closing.vault).isEmpty();
+
+        WalAuthenticationVault vault = open();
+        assertThat(vault.vault).isEmpty();
+        vault.register(() -> "late");
+        vault.snapshot();
+        vault.destroy();
+        assertThat(open().vault.keySet()).containsExactly("late");
+    }
+
+    @Test
+    public void failedWriteIsCutOffTheLogAndLaterRegistrationsSurvive() throws Exception {
+        final AtomicBoolean failing = new AtomicBoolean();
+        final WalAuthenticationVault vault = new WalAuthenticationVault(folder.getRoot().getPath()) {
+            @Override
+            FileChannel open(Path file) throws IOException {
+                return new TornChannel(super.open(file), failing);
+            }
+        };
+        vault.register(() -> "before");
+        failing.set(true);
+        assertThat(Try.of(() -> vault.register(() -> "failed")).isFailure()).isTrue();
+        final Authentication after = vault.register(() -> "after");
+        vault.destroy();
+
+        final WalAuthenticationVault recovered = open();
+        assertThat(recovered.vault.keySet()).containsExactly("before", "after");
+        assertThat(recovered.match(after).getName()).isEqualTo("after");
+        recovered.destroy();
+    }
+
+    private WalAuthenticationVault open() throws IOException {
+        return new WalAuthenticationVault(folder.getRoot().getPath());
+    }
+
+    /**
+     * Writes half of the next buffer it gets once {@code failing} is set, then fails like a full disk.
+     */
+    private static final class TornChannel extends FileChannel {
+        private final FileChannel channel;
+        private final AtomicBoolean failing;
+
+        TornChannel(FileChannel channel, AtomicBoolean failing) {
+            this.channel = channel;
+            this.failing = failing;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (!failing.getAndSet(false)) return channel.write(src);
+            final ByteBuffer half = src.duplicate();
+            half.limit(src.position() + src.remaining() / 2);
+            channel.write(half);
+            throw new IOException("No space left on device");
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            channel.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return channel.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -20,6 +20,18 @@ class InMemoryUserVisitJournal  {
         public List<AuthenticationLogEntry> successfulAttempts(final Principal principal, int limit) {
             return successLog.getOrDefault(principal,List.empty()).takeRight(limit);
         }
+
+        @Override
+        public void successfulAttempts(final Principal principal, long before, long seq, int limit, Visitor visitor) {
+            final List<AuthenticationLogEntry> entries = successLog.getOrDefault(principal,List.empty());
+            for (int i = entries.size() - 1, visited = 0; i >= 0 && visited < limit; i--) { //The index is the id
+                final long utc = entries.get(i).getUtc();
+                if (utc < before || utc == before && i < seq) {
+                    visitor.visit(utc, i);
+                    visited++;
+                }
+            }
+        }
     }
 
     static class SuccessAuthenticationJournalReader implements AuthenticationJournal {
@@ -34,6 +46,14 @@ class InMemoryUserVisitJournal  {
             return logSuccess(new AuthenticationLogEntry(principal, AuthenticationState.SUCCESSFUL,timestamp()));
         }
 
+        @Override
+        public AuthenticationLogEntry failure(final Principal principal) {
+            Objects.requireNonNull(principal,"identifier can not be null");
+            final AuthenticationLogEntry entry = new AuthenticationLogEntry(principal, AuthenticationState.FAILED,timestamp());
+            log.info("Authentication attempt failed for: {}", entry);
+            return entry;
+        }
+
         private AuthenticationLogEntry logSuccess(final AuthenticationLogEntry authenticationLogEntry) {
             log.info("Authentication attempt success for: {}", authenticationLogEntry);
             successLog.computeIfPresent(authenticationLogEntry.getPrincipal(),(principal, l) -> l.append(authenticationLogEntry));
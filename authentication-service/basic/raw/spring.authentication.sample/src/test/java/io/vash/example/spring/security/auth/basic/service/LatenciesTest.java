@@ -0,0 +1,68 @@
+package io.vash.example.spring.security.auth.basic.service;
+
+import com.google.common.collect.Range;
+import io.vash.example.spring.security.auth.basic.service.Latencies.Histogram;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class LatenciesTest {
+
+    @Test
+    public void everyValueFallsInABucketAtMostOneThirtySecondWide() {
+        for (long micros = 0; micros <= Histogram.MAX; micros = micros < 4096 ? micros + 1 : micros * 33 / 32) {
+            final int bucket = Histogram.bucket(micros);
+            assertThat(bucket).isLessThan(Histogram.BUCKETS);
+            assertThat(Histogram.highest(bucket)).isAtLeast(micros);
+            assertThat(Histogram.highest(bucket) - micros).isAtMost(micros / Histogram.SUB);
+            if (bucket > 0) assertThat(Histogram.highest(bucket - 1)).isLessThan(micros);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void percentilesAddUpAllThreads() throws Exception {
+        final Latencies latencies = new Latencies();
+        final Histogram histogram = latencies.histogram("test");
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            pool.submit(() -> {
+                for (int i = 1; i <= 1000; i++) {
+                    histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+                }
+            });
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        final Map<String, Object> summary = (Map<String, Object>) latencies.summary().get("test");
+        assertThat(summary.get("count")).isEqualTo(4000L);
+        assertThat(summary.get("mean")).isEqualTo(500L);
+        assertThat((Long) summary.get("p50")).isIn(Range.closed(500L, 500L + 500 / 32));
+        assertThat((Long) summary.get("p99")).isIn(Range.closed(990L, 990L + 990 / 32));
+        assertThat(summary.get("max")).isEqualTo(1000L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shortLivedThreadsShareTheStripes() throws Exception {
+        final Latencies latencies = new Latencies();
+        final Histogram histogram = latencies.histogram("test");
+        for (int t = 1; t <= 500; t++) {
+            final long micros = t;
+            final Thread thread = new Thread(() -> histogram.record(TimeUnit.MICROSECONDS.toNanos(micros)));
+            thread.start();
+            thread.join();
+        }
+
+        final Map<String, Object> summary = (Map<String, Object>) latencies.summary().get("test");
+        assertThat(summary.get("count")).isEqualTo(500L);
+        assertThat(summary.get("mean")).isEqualTo(250L);
+        assertThat(summary.get("max")).isEqualTo(500L);
+    }
+}
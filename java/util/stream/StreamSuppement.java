@@ -1,11 +1,28 @@
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.RandomAccess;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleConsumer;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongConsumer;
+import java.util.stream.Collector;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -19,10 +36,108 @@ public interface StreamsSupplement {
         return StreamSupport.stream(ZipIterator.from(first,second,func),false);
     }
 
+    static <T,U,R> Stream<R> zip(final T[] first, final U[] second, final BiFunction<? super T,? super U,? extends R> func) {
+        return StreamSupport.stream(new ZipListSpliterator<>(Arrays.asList(first),Arrays.asList(second),func),false);
+    }
+
     static <T,U,R> Stream<R> zip(final Stream<? extends T> first, final Stream<? extends U> second, final BiFunction<? super T,? super U,? extends R> func) {
         return StreamSupport.stream(ZipSpliterator.from(first,second,func),first.isParallel() || second.isParallel());
     }
 
+    static IntStream zip(final IntStream first, final IntStream second, final IntBinaryOperator func) {
+        return StreamSupport.intStream(ZipIntSpliterator.from(first,second,func),first.isParallel() || second.isParallel());
+    }
+
+    static LongStream zip(final LongStream first, final LongStream second, final LongBinaryOperator func) {
+        return StreamSupport.longStream(ZipLongSpliterator.from(first,second,func),first.isParallel() || second.isParallel());
+    }
+
+    static DoubleStream zip(final DoubleStream first, final DoubleStream second, final DoubleBinaryOperator func) {
+        return StreamSupport.doubleStream(ZipDoubleSpliterator.from(first,second,func),first.isParallel() || second.isParallel());
+    }
+
+    /**
+     * Zips up to the end of the longer stream, padding the shorter one with {@code leftPad} or {@code rightPad}.
+     */
+    static <T,U,R> Stream<R> zipLongest(final Stream<? extends T> first, final Stream<? extends U> second, final T leftPad, final U rightPad, final BiFunction<? super T,? super U,? extends R> func) {
+        final Spliterator<? extends T> lhs = Objects.requireNonNull(first).spliterator();
+        final Spliterator<? extends U> rhs = Objects.requireNonNull(second).spliterator();
+        return StreamSupport.stream(new ZipLongestSpliterator<>(lhs,rhs,leftPad,rightPad,func),first.isParallel() || second.isParallel());
+    }
+
+    static <A,B,C,R> Stream<R> zip3(final Stream<? extends A> first, final Stream<? extends B> second, final Stream<? extends C> third, final TriFunction<? super A,? super B,? super C,? extends R> func) {
+        Objects.requireNonNull(func);
+        @SuppressWarnings("unchecked") final Function<Object[],R> row = r -> func.apply((A) r[0], (B) r[1], (C) r[2]);
+        return zipN(row, first, second, third);
+    }
+
+    /**
+     * Zips any number of streams in a single pass. The row handed to {@code func} is reused for the next element,
+     * so {@code func} must not keep a reference to it.
+     */
+    static <R> Stream<R> zipN(final Function<? super Object[],? extends R> func, final Stream<?>... streams) {
+        final Spliterator<?>[] sides = new Spliterator<?>[streams.length];
+        boolean parallel = false;
+        for (int i = 0; i < streams.length; i++) {
+            sides[i] = Objects.requireNonNull(streams[i]).spliterator();
+            parallel |= streams[i].isParallel();
+        }
+        return StreamSupport.stream(new ZipNSpliterator<>(sides, func), parallel);
+    }
+
+    static <T,R> Stream<R> zipWithIndex(final Stream<? extends T> stream, final IndexedFunction<? super T,? extends R> func) {
+        return StreamSupport.stream(new ZipWithIndexSpliterator<>(Objects.requireNonNull(stream).spliterator(), 0, func), stream.isParallel());
+    }
+
+    static <T,A,B> Collector<T,?,Map.Entry<List<A>,List<B>>> unzip(final Function<? super T,? extends A> left, final Function<? super T,? extends B> right) {
+        return unzip(left, right, 10);
+    }
+
+    /**
+     * Splits every element into a left and a right part in one pass, into two lists pre-sized for {@code expectedSize}.
+     */
+    static <T,A,B> Collector<T,?,Map.Entry<List<A>,List<B>>> unzip(final Function<? super T,? extends A> left, final Function<? super T,? extends B> right, final int expectedSize) {
+        Objects.requireNonNull(left);
+        Objects.requireNonNull(right);
+        return Collector.<T,Map.Entry<List<A>,List<B>>>of(
+                () -> new AbstractMap.SimpleImmutableEntry<>(new ArrayList<>(expectedSize), new ArrayList<>(expectedSize)),
+                (lists, t) -> {
+                    lists.getKey().add(left.apply(t));
+                    lists.getValue().add(right.apply(t));
+                },
+                (lhs, rhs) -> {
+                    lhs.getKey().addAll(rhs.getKey());
+                    lhs.getValue().addAll(rhs.getValue());
+                    return lhs;
+                });
+    }
+
+    /**
+     * Consecutive chunks of {@code size} elements, the last one possibly shorter.
+     */
+    static <T> Stream<List<T>> chunked(final Stream<? extends T> stream, final int size) {
+        return sliding(stream, size, size);
+    }
+
+    /**
+     * Windows of {@code size} elements starting every {@code step} elements. The last window may be shorter, it is
+     * only emitted when it holds elements no previous window did.
+     */
+    static <T> Stream<List<T>> sliding(final Stream<? extends T> stream, final int size, final int step) {
+        if (size <= 0 || step <= 0) throw new IllegalArgumentException("Window size and step must be positive");
+        return StreamSupport.stream(new WindowSpliterator<>(Objects.requireNonNull(stream).spliterator(), size, step), stream.isParallel());
+    }
+
+    @FunctionalInterface
+    interface TriFunction<A,B,C,R> {
+        R apply(A a, B b, C c);
+    }
+
+    @FunctionalInterface
+    interface IndexedFunction<T,R> {
+        R apply(T t, long index);
+    }
+
 
     class ZipIterator<T,U,R> implements Iterator<R> {
 
@@ -33,6 +148,9 @@ public interface StreamsSupplement {
         }
 
         static <T,U,R> Spliterator<R> from(final Collection<? extends T> first, final Collection<? extends U> second, final BiFunction<? super T, ? super U,? extends R> func) {
+            if (first instanceof List && first instanceof RandomAccess && second instanceof List && second instanceof RandomAccess) {
+                return new ZipListSpliterator<>((List<? extends T>) first, (List<? extends U>) second, func);
+            }
             final int size = Math.min(first.size(),second.size());
             return size == 0 ? Spliterators.emptySpliterator() :
                     Spliterators.spliterator(
@@ -65,18 +183,100 @@ public interface StreamsSupplement {
 
         @Override
         public R next() {
+            init();
             return zip.apply(t.next(),u.next());
         }
 
+        @Override
+        public void forEachRemaining(Consumer<? super R> action) {
+            init();
+            final Iterator<? extends T> t = this.t;
+            final Iterator<? extends U> u = this.u;
+            while (t.hasNext() && u.hasNext()) {
+                action.accept(zip.apply(t.next(),u.next()));
+            }
+        }
+
         private void init() {
-            if (t == null && u == null) {
+            if (t == null) {
                 t = lhs.iterator();
                 u = rhs.iterator();
             }
         }
     }
 
+    /**
+     * Zips two random access lists (or arrays) by index, binding to their sizes on first traversal.
+     */
+    class ZipListSpliterator<T,U,R> implements Spliterator<R> {
+
+        private final List<? extends T> lhs;
+        private final List<? extends U> rhs;
+        private final BiFunction<? super T, ? super U, ? extends R> zip;
+
+        private int index;
+        private int fence;
+
+        ZipListSpliterator(final List<? extends T> first, final List<? extends U> second, final BiFunction<? super T, ? super U, ? extends R> func) {
+            this(first, second, func, 0, -1);
+        }
+
+        private ZipListSpliterator(final List<? extends T> first, final List<? extends U> second, final BiFunction<? super T, ? super U, ? extends R> func, int origin, int fence) {
+            this.lhs = Objects.requireNonNull(first);
+            this.rhs = Objects.requireNonNull(second);
+            this.zip = Objects.requireNonNull(func);
+            this.index = origin;
+            this.fence = fence;
+        }
+
+        private int fence() {
+            if (fence < 0) {
+                fence = Math.min(lhs.size(), rhs.size());
+            }
+            return fence;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super R> action) {
+            if (index >= fence()) return false;
+            final int i = index++;
+            action.accept(zip.apply(lhs.get(i), rhs.get(i)));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super R> action) {
+            final List<? extends T> lhs = this.lhs;
+            final List<? extends U> rhs = this.rhs;
+            final int hi = fence();
+            for (int i = index; i < hi; i++) {
+                action.accept(zip.apply(lhs.get(i), rhs.get(i)));
+            }
+            index = hi;
+        }
+
+        @Override
+        public Spliterator<R> trySplit() {
+            final int lo = index, mid = (lo + fence()) >>> 1;
+            return lo >= mid ? null : new ZipListSpliterator<>(lhs, rhs, zip, lo, index = mid);
+        }
+
+        @Override
+        public long estimateSize() {
+            return fence() - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+    }
+
     class ZipSpliterator<T,U,R> implements Spliterator<R> {
+
+        static final int BATCH_UNIT = 1 << 10;
+        static final int MAX_BATCH = 1 << 25;
+
         static <T,U,R> Spliterator<R> from(final Stream<? extends T> first, final Stream<? extends U> second, final BiFunction<? super T, ? super U,? extends R> func) {
             final Spliterator<? extends T> lhs = Objects.requireNonNull(first).spliterator();
             final Spliterator<? extends U> rhs = Objects.requireNonNull(second).spliterator();
@@ -87,40 +287,730 @@ public interface StreamsSupplement {
             return new ZipSpliterator<>(lefts, rights, func);
         }
 
+        private Spliterator<? extends T> lhs;
+        private Spliterator<? extends U> rhs;
+        private final BiFunction<? super T, ? super U, ? extends R> func;
+
+        private T left;
+        private U right;
+        private final Consumer<T> takeLeft = t -> left = t;
+        private final Consumer<U> takeRight = u -> right = u;
+        private boolean misaligned;
+        private boolean traversed;
+        private int batch;
+
+        ZipSpliterator(Spliterator<? extends T> lhs, Spliterator<? extends U> rhs, BiFunction<? super T, ? super U, ? extends R> func) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = Objects.requireNonNull(rhs);
+            this.func = Objects.requireNonNull(func);
+        }
+
+        /**
+         * Advances the side that may run out first, so that an element is never taken from one side without a
+         * partner from the other. Only when neither side is SIZED, one element of the right side may be consumed
+         * at the end of the left side.
+         */
+        @Override
+        public boolean tryAdvance(Consumer<? super R> action) {
+            traversed = true;
+            if (lhs.getExactSizeIfKnown() == 0 || rhs.getExactSizeIfKnown() == 0) return false;
+            final boolean advanced = rhs.hasCharacteristics(Spliterator.SIZED)
+                    ? lhs.tryAdvance(takeLeft) && rhs.tryAdvance(takeRight)
+                    : rhs.tryAdvance(takeRight) && lhs.tryAdvance(takeLeft);
+            if (!advanced) return false;
+            action.accept(func.apply(left, right));
+            return true;
+        }
+
+        /**
+         * When both sizes are exact, the shorter side is traversed in bulk while the other one is pulled along. The
+         * pull still stops at the first element the other side does not have.
+         */
+        @Override
+        public void forEachRemaining(Consumer<? super R> action) {
+            final boolean exact = hasCharacteristics(Spliterator.SIZED);
+            final long lefts = lhs.getExactSizeIfKnown();
+            final long rights = rhs.getExactSizeIfKnown();
+            traversed = true;
+            final boolean[] exhausted = {false};
+            if (exact && lefts <= rights) {
+                lhs.forEachRemaining(t -> {
+                    if (exhausted[0]) return;
+                    exhausted[0] = !rhs.tryAdvance(takeRight);
+                    if (!exhausted[0]) action.accept(func.apply(t, right));
+                });
+            } else if (exact) {
+                rhs.forEachRemaining(u -> {
+                    if (exhausted[0]) return;
+                    exhausted[0] = !lhs.tryAdvance(takeLeft);
+                    if (!exhausted[0]) action.accept(func.apply(left, u));
+                });
+            } else {
+                while (tryAdvance(action)) {
+                    //zipping
+                }
+            }
+        }
+
+        /**
+         * Sides of the same exact size that are both SUBSIZED (arrays, array lists, ...) are split in lockstep.
+         * Everything else is split by buffering a batch of zipped elements, growing like the JDK iterator
+         * spliterators do.
+         */
+        @Override
+        public Spliterator<R> trySplit() {
+            if (!misaligned && inLockstep(lhs, rhs)) {
+                final Spliterator<? extends T> lefts = lhs.trySplit();
+                final Spliterator<? extends U> rights = lefts == null ? null : rhs.trySplit();
+                if (lefts != null && rights != null && lefts.getExactSizeIfKnown() == rights.getExactSizeIfKnown()) {
+                    return new ZipSpliterator<>(lefts, rights, func);
+                }
+                if (lefts != null) {
+                    return realign(lefts, rights);
+                }
+            }
+            return splitBatch();
+        }
+
+        static boolean inLockstep(Spliterator<?> lhs, Spliterator<?> rhs) {
+            final long size = lhs.getExactSizeIfKnown();
+            return size > 1 && size == rhs.getExactSizeIfKnown()
+                    && lhs.hasCharacteristics(Spliterator.SUBSIZED) && rhs.hasCharacteristics(Spliterator.SUBSIZED);
+        }
+
+        /**
+         * The sides split at different positions: zip what both prefixes have in common into a buffer and push
+         * the excess of the longer prefix back in front of its suffix.
+         */
+        private Spliterator<R> realign(Spliterator<? extends T> lefts, Spliterator<? extends U> rights) {
+            final Spliterator<? extends U> rightPrefix = rights == null ? Spliterators.emptySpliterator() : rights;
+            final long common = Math.min(lefts.getExactSizeIfKnown(), rightPrefix.getExactSizeIfKnown());
+            final Object[] zipped = new Object[(int) common];
+            final ZipSpliterator<T,U,R> prefix = new ZipSpliterator<>(lefts, rightPrefix, func);
+            for (int i = 0; i < zipped.length; i++) {
+                final int at = i;
+                prefix.tryAdvance(r -> zipped[at] = r);
+            }
+            this.lhs = prepend(lefts, lhs);
+            this.rhs = prepend(rightPrefix, rhs);
+            this.misaligned = true; //The sides will not split evenly again, avoid nesting concatenations
+            return Spliterators.spliterator(zipped, characteristics());
+        }
+
+        static <E> Spliterator<E> prepend(Spliterator<? extends E> rest, Spliterator<? extends E> suffix) {
+            if (rest.getExactSizeIfKnown() == 0) {
+                @SuppressWarnings("unchecked") final Spliterator<E> unchanged = (Spliterator<E>) suffix;
+                return unchanged;
+            }
+            return Stream.<E>concat(StreamSupport.stream(rest, false), StreamSupport.stream(suffix, false)).spliterator();
+        }
+
+        private Spliterator<R> splitBatch() {
+            final long size = estimateSize();
+            if (size <= 1) return null;
+            final int n = (int) Math.min(Math.min(batch + BATCH_UNIT, MAX_BATCH), size);
+            final Object[] zipped = new Object[n];
+            final int[] j = {0};
+            while (j[0] < n && tryAdvance(r -> zipped[j[0]++] = r)) {
+                //buffering
+            }
+            if (j[0] == 0) return null;
+            batch = j[0];
+            return Spliterators.spliterator(zipped, 0, j[0], characteristics());
+        }
+
+        @Override
+        public long estimateSize() {
+            return Math.min(lhs.estimateSize(), rhs.estimateSize());
+        }
+
+        @Override
+        public int characteristics() {
+            return sizing(traversed, lhs.characteristics() & rhs.characteristics() &
+                    ~(Spliterator.DISTINCT | Spliterator.SORTED)); // Zipping looses DISTINCT and SORTED characteristics
+        }
+
+        /**
+         * A SIZED spliterator only has to report its exact size before it is traversed or split: the TreeSet one keeps
+         * reporting its initial size. Once a batch was buffered, only sides that are all SUBSIZED keep the zip SIZED.
+         */
+        static int sizing(boolean traversed, int characteristics) {
+            return traversed && (characteristics & Spliterator.SUBSIZED) == 0 ? characteristics & ~Spliterator.SIZED : characteristics;
+        }
+    }
+
+    class ZipLongestSpliterator<T,U,R> implements Spliterator<R> {
+
         private final Spliterator<? extends T> lhs;
         private final Spliterator<? extends U> rhs;
+        private final T leftPad;
+        private final U rightPad;
         private final BiFunction<? super T, ? super U, ? extends R> func;
 
-        private boolean advancedOnRight;
-        ZipSpliterator(Spliterator<? extends T> lhs, Spliterator<? extends U> rhs, BiFunction<? super T, ? super U, ? extends R> func) {
+        private T left;
+        private U right;
+        private final Consumer<T> takeLeft = t -> left = t;
+        private final Consumer<U> takeRight = u -> right = u;
+        private boolean traversed;
+        private int batch;
+
+        ZipLongestSpliterator(Spliterator<? extends T> lhs, Spliterator<? extends U> rhs, T leftPad, U rightPad, BiFunction<? super T, ? super U, ? extends R> func) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = Objects.requireNonNull(rhs);
+            this.leftPad = leftPad;
+            this.rightPad = rightPad;
+            this.func = Objects.requireNonNull(func);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super R> action) {
+            traversed = true;
+            final boolean advancedOnLeft = lhs.tryAdvance(takeLeft);
+            final boolean advancedOnRight = rhs.tryAdvance(takeRight);
+            if (!advancedOnLeft && !advancedOnRight) return false;
+            action.accept(func.apply(advancedOnLeft ? left : leftPad, advancedOnRight ? right : rightPad));
+            return true;
+        }
+
+        /**
+         * The sides only line up by buffering, so every split is a batch of zipped elements.
+         */
+        @Override
+        public Spliterator<R> trySplit() {
+            final long size = estimateSize();
+            if (size <= 1) return null;
+            final Object[] zipped = new Object[(int) Math.min(Math.min(batch + ZipSpliterator.BATCH_UNIT, ZipSpliterator.MAX_BATCH), size)];
+            final int[] j = {0};
+            while (j[0] < zipped.length && tryAdvance(r -> zipped[j[0]++] = r)) {
+                //buffering
+            }
+            if (j[0] == 0) return null;
+            batch = j[0];
+            return Spliterators.spliterator(zipped, 0, j[0], characteristics());
+        }
+
+        @Override
+        public long estimateSize() {
+            return Math.max(lhs.estimateSize(), rhs.estimateSize());
+        }
+
+        @Override
+        public int characteristics() {
+            return ZipSpliterator.sizing(traversed, lhs.characteristics() & rhs.characteristics()) & ~(Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.SUBSIZED);
+        }
+    }
+
+    class ZipIntSpliterator implements Spliterator.OfInt {
+
+        static Spliterator.OfInt from(final IntStream first, final IntStream second, final IntBinaryOperator func) {
+            return new ZipIntSpliterator(Objects.requireNonNull(first).spliterator(), Objects.requireNonNull(second).spliterator(), func);
+        }
+
+        private Spliterator.OfInt lhs;
+        private Spliterator.OfInt rhs;
+        private final IntBinaryOperator func;
+
+        private int left;
+        private int right;
+        private final IntConsumer takeLeft = t -> left = t;
+        private final IntConsumer takeRight = u -> right = u;
+        private boolean misaligned;
+        private boolean traversed;
+        private int batch;
+
+        ZipIntSpliterator(Spliterator.OfInt lhs, Spliterator.OfInt rhs, IntBinaryOperator func) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = Objects.requireNonNull(rhs);
+            this.func = Objects.requireNonNull(func);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            traversed = true;
+            if (lhs.tryAdvance(takeLeft) && rhs.tryAdvance(takeRight)) {
+                action.accept(func.applyAsInt(left, right));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            if (!misaligned && ZipSpliterator.inLockstep(lhs, rhs)) {
+                final Spliterator.OfInt lefts = lhs.trySplit();
+                final Spliterator.OfInt rights = lefts == null ? null : rhs.trySplit();
+                if (lefts != null && rights != null && lefts.getExactSizeIfKnown() == rights.getExactSizeIfKnown()) {
+                    return new ZipIntSpliterator(lefts, rights, func);
+                }
+                if (lefts != null) {
+                    final Spliterator.OfInt rightPrefix = rights == null ? Spliterators.emptyIntSpliterator() : rights;
+                    final Spliterator.OfInt prefix = buffer(new ZipIntSpliterator(lefts, rightPrefix, func), Math.min(lefts.getExactSizeIfKnown(), rightPrefix.getExactSizeIfKnown()));
+                    this.lhs = IntStream.concat(StreamSupport.intStream(lefts, false), StreamSupport.intStream(lhs, false)).spliterator();
+                    this.rhs = IntStream.concat(StreamSupport.intStream(rightPrefix, false), StreamSupport.intStream(rhs, false)).spliterator();
+                    this.misaligned = true;
+                    return prefix;
+                }
+            }
+            final long size = estimateSize();
+            if (size <= 1) return null;
+            final Spliterator.OfInt prefix = buffer(this, Math.min(Math.min(batch + ZipSpliterator.BATCH_UNIT, ZipSpliterator.MAX_BATCH), size));
+            batch = (int) prefix.estimateSize();
+            return batch == 0 ? null : prefix;
+        }
+
+        private Spliterator.OfInt buffer(Spliterator.OfInt source, long n) {
+            final int[] zipped = new int[(int) n];
+            final int[] j = {0};
+            while (j[0] < zipped.length && source.tryAdvance((int r) -> zipped[j[0]++] = r)) {
+                //buffering
+            }
+            return Spliterators.spliterator(zipped, 0, j[0], characteristics());
+        }
+
+        @Override
+        public long estimateSize() {
+            return Math.min(lhs.estimateSize(), rhs.estimateSize());
+        }
+
+        @Override
+        public int characteristics() {
+            return ZipSpliterator.sizing(traversed, lhs.characteristics() & rhs.characteristics() & ~(Spliterator.DISTINCT | Spliterator.SORTED));
+        }
+    }
+
+    class ZipLongSpliterator implements Spliterator.OfLong {
+
+        static Spliterator.OfLong from(final LongStream first, final LongStream second, final LongBinaryOperator func) {
+            return new ZipLongSpliterator(Objects.requireNonNull(first).spliterator(), Objects.requireNonNull(second).spliterator(), func);
+        }
+
+        private Spliterator.OfLong lhs;
+        private Spliterator.OfLong rhs;
+        private final LongBinaryOperator func;
+
+        private long left;
+        private long right;
+        private final LongConsumer takeLeft = t -> left = t;
+        private final LongConsumer takeRight = u -> right = u;
+        private boolean misaligned;
+        private boolean traversed;
+        private int batch;
+
+        ZipLongSpliterator(Spliterator.OfLong lhs, Spliterator.OfLong rhs, LongBinaryOperator func) {
+            this.lhs = Objects.requireNonNull(lhs);
+            this.rhs = Objects.requireNonNull(rhs);
+            this.func = Objects.requireNonNull(func);
+        }
+
+        @Override
+        public boolean tryAdvance(LongConsumer action) {
+            traversed = true;
+            if (lhs.tryAdvance(takeLeft) && rhs.tryAdvance(takeRight)) {
+                action.accept(func.applyAsLong(left, right));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator.OfLong trySplit() {
+            if (!misaligned && ZipSpliterator.inLockstep(lhs, rhs)) {
+                final Spliterator.OfLong lefts = lhs.trySplit();
+                final Spliterator.OfLong rights = lefts == null ? null : rhs.trySplit();
+                if (lefts != null && rights != null && lefts.getExactSizeIfKnown() == rights.getExactSizeIfKnown()) {
+                    return new ZipLongSpliterator(lefts, rights, func);
+                }
+                if (lefts != null) {
+                    final Spliterator.OfLong rightPrefix = rights == null ? Spliterators.emptyLongSpliterator() : rights;
+                    final Spliterator.OfLong prefix = buffer(new ZipLongSpliterator(lefts, rightPrefix, func), Math.min(lefts.getExactSizeIfKnown(), rightPrefix.getExactSizeIfKnown()));
+                    this.lhs = LongStream.concat(StreamSupport.longStream(lefts, false), StreamSupport.longStream(lhs, false)).spliterator();
+                    this.rhs = LongStream.concat(StreamSupport.longStream(rightPrefix, false), StreamSupport.longStream(rhs, false)).spliterator();
+                    this.misaligned = true;
+                    return prefix;
+                }
+            }
+            final long size = estimateSize();
+            if (size <= 1) return null;
+            final Spliterator.OfLong prefix = buffer(this, Math.min(Math.min(batch + ZipSpliterator.BATCH_UNIT, ZipSpliterator.MAX_BATCH), size));
+            batch = (int) prefix.estimateSize();
+            return batch == 0 ? null : prefix;
+        }
+
+        private Spliterator.OfLong buffer(Spliterator.OfLong source, long n) {
+            final long[] zipped = new long[(int) n];
+            final int[] j = {0};
+            while (j[0] < zipped.length && source.tryAdvance((long r) -> zipped[j[0]++] = r)) {
+                //buffering
+            }
+            return Spliterators.spliterator(zipped, 0, j[0], characteristics());
+        }
+
+        @Override
+        public long estimateSize() {
+            return Math.min(lhs.estimateSize(), rhs.estimateSize());
+        }
+
+        @Override
+        public int characteristics() {
+            return ZipSpliterator.sizing(traversed, lhs.characteristics() & rhs.characteristics() & ~(Spliterator.DISTINCT | Spliterator.SORTED));
+        }
+    }
+
+    class ZipDoubleSpliterator implements Spliterator.OfDouble {
+
+        static Spliterator.OfDouble from(final DoubleStream first, final DoubleStream second, final DoubleBinaryOperator func) {
+            return new ZipDoubleSpliterator(Objects.requireNonNull(first).spliterator(), Objects.requireNonNull(second).spliterator(), func);
+        }
+
+        private Spliterator.OfDouble lhs;
+        private Spliterator.OfDouble rhs;
+        private final DoubleBinaryOperator func;
+
+        private double left;
+        private double right;
+        private final DoubleConsumer takeLeft = t -> left = t;
+        private final DoubleConsumer takeRight = u -> right = u;
+        private boolean misaligned;
+        private boolean traversed;
+        private int batch;
+
+        ZipDoubleSpliterator(Spliterator.OfDouble lhs, Spliterator.OfDouble rhs, DoubleBinaryOperator func) {
             this.lhs = Objects.requireNonNull(lhs);
             this.rhs = Objects.requireNonNull(rhs);
             this.func = Objects.requireNonNull(func);
         }
 
+        @Override
+        public boolean tryAdvance(DoubleConsumer action) {
+            traversed = true;
+            if (lhs.tryAdvance(takeLeft) && rhs.tryAdvance(takeRight)) {
+                action.accept(func.applyAsDouble(left, right));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator.OfDouble trySplit() {
+            if (!misaligned && ZipSpliterator.inLockstep(lhs, rhs)) {
+                final Spliterator.OfDouble lefts = lhs.trySplit();
+                final Spliterator.OfDouble rights = lefts == null ? null : rhs.trySplit();
+                if (lefts != null && rights != null && lefts.getExactSizeIfKnown() == rights.getExactSizeIfKnown()) {
+                    return new ZipDoubleSpliterator(lefts, rights, func);
+                }
+                if (lefts != null) {
+                    final Spliterator.OfDouble rightPrefix = rights == null ? Spliterators.emptyDoubleSpliterator() : rights;
+                    final Spliterator.OfDouble prefix = buffer(new ZipDoubleSpliterator(lefts, rightPrefix, func), Math.min(lefts.getExactSizeIfKnown(), rightPrefix.getExactSizeIfKnown()));
+                    this.lhs = DoubleStream.concat(StreamSupport.doubleStream(lefts, false), StreamSupport.doubleStream(lhs, false)).spliterator();
+                    this.rhs = DoubleStream.concat(StreamSupport.doubleStream(rightPrefix, false), StreamSupport.doubleStream(rhs, false)).spliterator();
+                    this.misaligned = true;
+                    return prefix;
+                }
+            }
+            final long size = estimateSize();
+            if (size <= 1) return null;
+            final Spliterator.OfDouble prefix = buffer(this, Math.min(Math.min(batch + ZipSpliterator.BATCH_UNIT, ZipSpliterator.MAX_BATCH), size));
+            batch = (int) prefix.estimateSize();
+            return batch == 0 ? null : prefix;
+        }
+
+        private Spliterator.OfDouble buffer(Spliterator.OfDouble source, long n) {
+            final double[] zipped = new double[(int) n];
+            final int[] j = {0};
+            while (j[0] < zipped.length && source.tryAdvance((double r) -> zipped[j[0]++] = r)) {
+                //buffering
+            }
+            return Spliterators.spliterator(zipped, 0, j[0], characteristics());
+        }
+
+        @Override
+        public long estimateSize() {
+            return Math.min(lhs.estimateSize(), rhs.estimateSize());
+        }
+
+        @Override
+        public int characteristics() {
+            return ZipSpliterator.sizing(traversed, lhs.characteristics() & rhs.characteristics() & ~(Spliterator.DISTINCT | Spliterator.SORTED));
+        }
+    }
+
+    class ZipNSpliterator<R> implements Spliterator<R> {
+
+        private final Spliterator<?>[] sides;
+        private final Function<? super Object[], ? extends R> func;
+
+        private final Object[] row;
+        private final Consumer<Object>[] takes;
+        private boolean misaligned;
+        private boolean traversed;
+        private int batch;
+
+        @SuppressWarnings("unchecked")
+        ZipNSpliterator(Spliterator<?>[] sides, Function<? super Object[], ? extends R> func) {
+            this.sides = Objects.requireNonNull(sides);
+            this.func = Objects.requireNonNull(func);
+            this.row = new Object[sides.length];
+            this.takes = (Consumer<Object>[]) new Consumer<?>[sides.length];
+            for (int i = 0; i < sides.length; i++) {
+                final int at = i;
+                Objects.requireNonNull(sides[i]);
+                takes[i] = e -> row[at] = e;
+            }
+        }
+
         @Override
         public boolean tryAdvance(Consumer<? super R> action) {
-            return lhs.tryAdvance( t -> {
-                this.advancedOnRight = rhs.tryAdvance( u -> action.accept(func.apply(t,u)));
-            }) && this.advancedOnRight;
+            if (sides.length == 0) return false;
+            traversed = true;
+            for (int i = 0; i < sides.length; i++) {
+                @SuppressWarnings("unchecked") final Spliterator<Object> side = (Spliterator<Object>) sides[i];
+                if (!side.tryAdvance(takes[i])) return false;
+            }
+            action.accept(func.apply(row));
+            return true;
         }
 
+        /**
+         * Same strategy as {@link ZipSpliterator#trySplit()}, applied to every side.
+         */
         @Override
         public Spliterator<R> trySplit() {
-            return null;
+            if (!misaligned && inLockstep()) {
+                final Spliterator<?>[] prefixes = new Spliterator<?>[sides.length];
+                long common = Long.MAX_VALUE;
+                boolean aligned = true;
+                for (int i = 0; i < sides.length; i++) {
+                    final Spliterator<?> prefix = sides[i].trySplit();
+                    prefixes[i] = prefix == null ? Spliterators.emptySpliterator() : prefix;
+                    aligned &= prefix != null && (i == 0 || prefix.getExactSizeIfKnown() == common);
+                    common = Math.min(common, prefixes[i].getExactSizeIfKnown());
+                }
+                if (aligned) {
+                    return new ZipNSpliterator<>(prefixes, func);
+                }
+                final Spliterator<R> zipped = buffer(new ZipNSpliterator<>(prefixes, func), common);
+                for (int i = 0; i < sides.length; i++) {
+                    sides[i] = ZipSpliterator.prepend(prefixes[i], sides[i]);
+                }
+                this.misaligned = true;
+                return zipped;
+            }
+            final long size = estimateSize();
+            if (size <= 1) return null;
+            final Spliterator<R> prefix = buffer(this, Math.min(Math.min(batch + ZipSpliterator.BATCH_UNIT, ZipSpliterator.MAX_BATCH), size));
+            batch = (int) prefix.estimateSize();
+            return batch == 0 ? null : prefix;
+        }
+
+        private boolean inLockstep() {
+            if (sides.length == 0) return false;
+            final long size = sides[0].getExactSizeIfKnown();
+            for (Spliterator<?> side : sides) {
+                if (size <= 1 || side.getExactSizeIfKnown() != size || !side.hasCharacteristics(Spliterator.SUBSIZED)) return false;
+            }
+            return true;
+        }
+
+        private Spliterator<R> buffer(Spliterator<R> source, long n) {
+            final Object[] zipped = new Object[(int) n];
+            final int[] j = {0};
+            while (j[0] < zipped.length && source.tryAdvance(r -> zipped[j[0]++] = r)) {
+                //buffering
+            }
+            return Spliterators.spliterator(zipped, 0, j[0], characteristics());
+        }
+
+        @Override
+        public long estimateSize() {
+            long size = sides.length == 0 ? 0 : Long.MAX_VALUE;
+            for (Spliterator<?> side : sides) {
+                size = Math.min(size, side.estimateSize());
+            }
+            return size;
+        }
+
+        @Override
+        public int characteristics() {
+            int characteristics = ~(Spliterator.DISTINCT | Spliterator.SORTED);
+            for (Spliterator<?> side : sides) {
+                characteristics &= side.characteristics();
+            }
+            return ZipSpliterator.sizing(traversed, characteristics);
+        }
+    }
+
+    class ZipWithIndexSpliterator<T,R> implements Spliterator<R> {
+
+        private Spliterator<? extends T> source;
+        private final IndexedFunction<? super T, ? extends R> func;
+
+        private long index;
+        private boolean traversed;
+        private int batch;
+
+        ZipWithIndexSpliterator(Spliterator<? extends T> source, long index, IndexedFunction<? super T, ? extends R> func) {
+            this.source = Objects.requireNonNull(source);
+            this.index = index;
+            this.func = Objects.requireNonNull(func);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super R> action) {
+            traversed = true;
+            return source.tryAdvance(t -> action.accept(func.apply(t, index++)));
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super R> action) {
+            traversed = true;
+            source.forEachRemaining(t -> action.accept(func.apply(t, index++)));
+        }
+
+        /**
+         * A SUBSIZED source tells how many elements the prefix takes, so the suffix just starts counting later.
+         * Any other source is split by buffering a batch, as the zip spliterators do.
+         */
+        @Override
+        public Spliterator<R> trySplit() {
+            if (source.hasCharacteristics(Spliterator.SUBSIZED)) {
+                final Spliterator<? extends T> prefix = source.trySplit();
+                if (prefix == null) return null;
+                final ZipWithIndexSpliterator<T,R> split = new ZipWithIndexSpliterator<>(prefix, index, func);
+                index += prefix.getExactSizeIfKnown();
+                return split;
+            }
+            final long size = estimateSize();
+            if (size <= 1) return null;
+            final Object[] zipped = new Object[(int) Math.min(Math.min(batch + ZipSpliterator.BATCH_UNIT, ZipSpliterator.MAX_BATCH), size)];
+            final int[] j = {0};
+            while (j[0] < zipped.length && tryAdvance(r -> zipped[j[0]++] = r)) {
+                //buffering
+            }
+            if (j[0] == 0) return null;
+            batch = j[0];
+            return Spliterators.spliterator(zipped, 0, j[0], characteristics());
+        }
+
+        @Override
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return ZipSpliterator.sizing(traversed, source.characteristics() & ~(Spliterator.DISTINCT | Spliterator.SORTED));
+        }
+    }
+
+    class WindowSpliterator<T> implements Spliterator<List<T>> {
+
+        private final Spliterator<? extends T> source;
+        private Spliterator<T> tail = Spliterators.emptySpliterator();
+        private final int size;
+        private final int step;
+
+        private List<T> carry = new ArrayList<>();
+        private int skip;
+        private List<T> window;
+        private final Consumer<T> take = t -> window.add(t);
+        private final Consumer<T> drop = t -> {};
+        private boolean traversed;
+        private int batch;
+
+        WindowSpliterator(Spliterator<? extends T> source, int size, int step) {
+            this.source = Objects.requireNonNull(source);
+            this.size = size;
+            this.step = step;
+        }
+
+        private boolean pull(Consumer<T> action) {
+            traversed = true;
+            return source.tryAdvance(action) || tail.tryAdvance(action);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super List<T>> action) {
+            while (skip > 0 && pull(drop)) {
+                skip--;
+            }
+            final int carried = carry.size();
+            window = new ArrayList<>((int) Math.min(size, carried + Math.min(Integer.MAX_VALUE, remaining())));
+            window.addAll(carry);
+            while (window.size() < size && pull(take)) {
+                //filling
+            }
+            final List<T> next = window;
+            window = null;
+            if (next.size() == carried) return false;
+            carry = new ArrayList<>(next.subList(Math.min(step, next.size()), next.size()));
+            skip = Math.max(0, step - next.size());
+            action.accept(next);
+            return true;
+        }
+
+        /**
+         * A SUBSIZED source is split where it likes, then realigned on the first window starting in the suffix: the
+         * elements from the split point up to the end of the last prefix window are appended to the prefix, and the
+         * part of them the suffix still needs becomes its carry. Any other source is split by buffering a batch of
+         * windows.
+         */
+        @Override
+        public Spliterator<List<T>> trySplit() {
+            while (skip > 0 && pull(drop)) {
+                skip--;
+            }
+            if (source.hasCharacteristics(Spliterator.SUBSIZED)) {
+                final Spliterator<? extends T> prefix = source.trySplit();
+                if (prefix == null || prefix.getExactSizeIfKnown() <= 0) return null;
+                final long split = carry.size() + prefix.getExactSizeIfKnown();
+                final long suffixStart = (split + step - 1) / step * step;
+                final long prefixEnd = suffixStart - step + size;
+                final List<T> moved = new ArrayList<>();
+                final Consumer<T> move = moved::add;
+                while (moved.size() < Math.max(suffixStart, prefixEnd) - split && pull(move)) {
+                    //realigning
+                }
+                final WindowSpliterator<T> head = new WindowSpliterator<>(prefix, size, step);
+                head.carry = carry;
+                head.tail = new ArrayList<>(moved.subList(0, (int) Math.max(0, Math.min(moved.size(), prefixEnd - split)))).spliterator();
+                this.carry = new ArrayList<>(moved.subList((int) Math.min(moved.size(), suffixStart - split), moved.size()));
+                return head;
+            }
+            final long estimate = estimateSize();
+            if (estimate <= 1) return null;
+            final Object[] windows = new Object[(int) Math.min(Math.min(batch + ZipSpliterator.BATCH_UNIT, ZipSpliterator.MAX_BATCH), estimate)];
+            final int[] j = {0};
+            while (j[0] < windows.length && tryAdvance(w -> windows[j[0]++] = w)) {
+                //buffering
+            }
+            if (j[0] == 0) return null;
+            batch = j[0];
+            return Spliterators.spliterator(windows, 0, j[0], characteristics());
+        }
+
+        private long remaining() {
+            final long remaining = source.estimateSize() + tail.estimateSize();
+            return remaining < 0 ? Long.MAX_VALUE : remaining;
         }
 
+        /**
+         * Exact while SIZED is reported: one window if anything is left beyond the carry, plus one per further step that
+         * starts inside the remaining elements and ends past the previous window.
+         */
         @Override
         public long estimateSize() {
-            return ((characteristics() & Spliterator.SIZED) != 0)
-                    ? Math.min(lhs.getExactSizeIfKnown(), rhs.getExactSizeIfKnown())
-                    : -1;
+            final long remaining = remaining();
+            if (remaining == Long.MAX_VALUE) return Long.MAX_VALUE;
+            final long total = carry.size() + remaining - skip;
+            if (total <= carry.size()) return 0;
+            final long starts = (total - 1) / step;
+            final long fresh = total <= size ? 0 : (total - size - 1) / step + 1;
+            return 1 + Math.min(starts, fresh);
         }
 
         @Override
         public int characteristics() {
-            return lhs.characteristics() & rhs.characteristics() &
-                    ~(Spliterator.DISTINCT | Spliterator.SORTED); // Zipping looses DISTINCT and SORTED characteristics
+            return ZipSpliterator.sizing(traversed, source.characteristics() & (Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE)) | Spliterator.NONNULL;
         }
     }
-}
\ No newline at end of file
+}